@@ -0,0 +1,147 @@
+package info.doula.security.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import info.doula.system.MetricsReporter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.event.EventListener;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The single JDBC pool of the auth subsystem, shared by the client details service and the token store
+ * Pool sizing, statement cache and leak detection are read from auth.datasource.*,
+ * the connection itself from spring.datasource.*.
+ *
+ * @author hossaindoula
+ */
+@Configuration
+public class AuthDataSourceConfig {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /** statements run by the client details service and the JDBC token store on every login */
+    private static final String[] WARM_UP_STATEMENTS = {
+            "select client_id from oauth_client_details where client_id = ?",
+            "select token_id, token from oauth_access_token where token_id = ?",
+            "select token_id, authentication from oauth_access_token where token_id = ?",
+            "select token_id, token from oauth_refresh_token where token_id = ?"
+    };
+
+    @Value("${spring.datasource.url}")
+    private String url;
+
+    @Value("${spring.datasource.username:}")
+    private String username;
+
+    @Value("${spring.datasource.password:}")
+    private String password;
+
+    @Value("${spring.datasource.driver-class-name:}")
+    private String driverClassName;
+
+    @Value("${auth.datasource.pool.maximum-size:10}")
+    private int maximumPoolSize;
+
+    @Value("${auth.datasource.pool.minimum-idle:2}")
+    private int minimumIdle;
+
+    @Value("${auth.datasource.pool.connection-timeout:3000}")
+    private long connectionTimeout;
+
+    @Value("${auth.datasource.pool.idle-timeout:600000}")
+    private long idleTimeout;
+
+    @Value("${auth.datasource.pool.max-lifetime:1800000}")
+    private long maxLifetime;
+
+    @Value("${auth.datasource.pool.leak-detection-threshold:10000}")
+    private long leakDetectionThreshold;
+
+    @Value("${auth.datasource.statement-cache.size:250}")
+    private int statementCacheSize;
+
+    @Value("${auth.datasource.statement-cache.sql-limit:2048}")
+    private int statementCacheSqlLimit;
+
+    @Value("${auth.datasource.warm-up:true}")
+    private boolean warmUp;
+
+    @Bean(destroyMethod = "close")
+    @Primary
+    public HikariDataSource dataSource() {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("auth");
+        config.setJdbcUrl(url);
+        config.setUsername(username);
+        config.setPassword(password);
+        if (!driverClassName.isEmpty()) config.setDriverClassName(driverClassName);
+
+        config.setMaximumPoolSize(maximumPoolSize);
+        config.setMinimumIdle(minimumIdle);
+        config.setConnectionTimeout(connectionTimeout);
+        config.setIdleTimeout(idleTimeout);
+        config.setMaxLifetime(maxLifetime);
+        config.setLeakDetectionThreshold(leakDetectionThreshold);
+        config.setRegisterMbeans(true);
+
+        // driver side prepared statement cache (MySQL Connector/J property names)
+        config.addDataSourceProperty("cachePrepStmts", "true");
+        config.addDataSourceProperty("prepStmtCacheSize", String.valueOf(statementCacheSize));
+        config.addDataSourceProperty("prepStmtCacheSqlLimit", String.valueOf(statementCacheSqlLimit));
+        config.addDataSourceProperty("useServerPrepStmts", "true");
+        return new HikariDataSource(config);
+    }
+
+    @Bean
+    public MetricsReporter authDataSourceMetricsReporter() {
+        return new DataSourceMetricsReporter("authDataSource", dataSource());
+    }
+
+    /**
+     * Open the idle connections and prepare the login statements on each of them,
+     * so the first logins after a start don't pay for cold connections
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!warmUp) return;
+
+        long start = System.currentTimeMillis();
+        DataSource dataSource = dataSource();
+        List<Connection> connections = new ArrayList<>(minimumIdle);
+        try {
+            for (int i = 0; i < Math.max(1, minimumIdle); i++) {
+                Connection connection = dataSource.getConnection();
+                connections.add(connection);
+                for (String sql : WARM_UP_STATEMENTS) {
+                    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                        statement.setString(1, "");
+                        statement.executeQuery().close();
+                    }
+                }
+            }
+            logger.info("auth datasource warmed up with {} connections in {} ms",
+                    connections.size(), System.currentTimeMillis() - start);
+        } catch (SQLException e) {
+            logger.warn("auth datasource warm up failed", e);
+        } finally {
+            for (Connection connection : connections) {
+                try {
+                    connection.close();
+                } catch (SQLException ignored) {
+                }
+            }
+        }
+    }
+}
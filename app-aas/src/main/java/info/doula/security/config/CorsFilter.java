@@ -1,5 +1,6 @@
 package info.doula.security.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.Ordered;
 import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
@@ -8,27 +9,84 @@ import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+/**
+ * CORS filter
+ * The header values are built once from the configuration (cors.allowed.*).
+ * With an origin allowlist the request origin is echoed back, otherwise every origin is answered with "*".
+ * Preflight requests are answered here without entering the filter chain.
+ */
 @Component
 @Order(Ordered.HIGHEST_PRECEDENCE)
 public class CorsFilter implements Filter {
 
+    private static final String ALLOW_ORIGIN = "Access-Control-Allow-Origin";
+    private static final String ALLOW_METHODS = "Access-Control-Allow-Methods";
+    private static final String ALLOW_HEADERS = "Access-Control-Allow-Headers";
+    private static final String MAX_AGE = "Access-Control-Max-Age";
+    private static final String REQUEST_METHOD = "Access-Control-Request-Method";
+    private static final String REQUEST_HEADERS = "Access-Control-Request-Headers";
+    private static final String ANY_ORIGIN = "*";
+
+    private static final int PREFLIGHT_CACHE_SIZE = 256;
+
+    private final boolean anyOrigin;
+    private final Set<String> allowedOrigins;
+    private final Set<String> allowedMethods;
+    private final Set<String> allowedHeaders;
+    private final String allowMethods;
+    private final String allowHeaders;
+    private final String maxAge;
+
+    /** decision per requested header list, the raw header value is the key */
+    private final ConcurrentMap<String, Boolean> preflightHeaderDecisions = new ConcurrentHashMap<>();
+
+    public CorsFilter(@Value("${cors.allowed.origins:*}") String origins,
+                      @Value("${cors.allowed.methods:POST, PUT, GET, OPTIONS, DELETE}") String methods,
+                      @Value("${cors.allowed.headers:Authorization, Content-Type}") String headers,
+                      @Value("${cors.max-age:3600}") long maxAge) {
+        this.allowedOrigins = toSet(origins, false);
+        this.anyOrigin = allowedOrigins.contains(ANY_ORIGIN);
+        this.allowedMethods = toSet(methods, true);
+        this.allowedHeaders = toSet(headers.toLowerCase(Locale.ROOT), false);
+        this.allowMethods = String.join(", ", allowedMethods);
+        this.allowHeaders = String.join(", ", toSet(headers, false));
+        this.maxAge = String.valueOf(maxAge);
+    }
+
     @Override
     public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain) throws IOException, ServletException {
+        final HttpServletRequest request = (HttpServletRequest) req;
         final HttpServletResponse response = (HttpServletResponse) res;
-        Map<String, Object> headerKeys = new HashMap<>();
-        headerKeys.put("Access-Control-Allow-Origin", "*");
-        headerKeys.put("Access-Control-Allow-Methods", "POST, PUT, GET, OPTIONS, DELETE");
-        headerKeys.put("Access-Control-Allow-Headers", "Authorization, Content-Type");
-        headerKeys.put("Access-Control-Max-Age", "3600");
-        setHeaders(response, headerKeys);
-
-        if ("OPTIONS".equalsIgnoreCase(((HttpServletRequest) req).getMethod()))
-            response.setStatus(HttpServletResponse.SC_OK);
-        else
-            chain.doFilter(req, res);
+        final String origin = request.getHeader("Origin");
+        final boolean originAllowed = isOriginAllowed(origin);
+
+        // the answer depends on the origin for every request, also a refused one, so shared caches
+        // must not hand a response without CORS headers to an allowed origin
+        if (!anyOrigin) response.addHeader("Vary", "Origin");
+        if (originAllowed) {
+            response.setHeader(ALLOW_ORIGIN, anyOrigin ? ANY_ORIGIN : origin);
+        }
+
+        if ("OPTIONS".equalsIgnoreCase(request.getMethod())) {
+            if (originAllowed && isPreflightAllowed(request)) {
+                response.setHeader(ALLOW_METHODS, allowMethods);
+                response.setHeader(ALLOW_HEADERS, allowHeaders);
+                response.setHeader(MAX_AGE, maxAge);
+                response.setStatus(HttpServletResponse.SC_OK);
+            } else {
+                response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            }
+            return;
+        }
+
+        chain.doFilter(req, res);
     }
 
     @Override
@@ -39,8 +97,37 @@ public class CorsFilter implements Filter {
     public void init(FilterConfig config) throws ServletException {
     }
 
-    private void setHeaders(HttpServletResponse response, Map<String,Object> headerKeys){
-        for(Map.Entry headerKey : headerKeys.entrySet())
-            response.setHeader(headerKey.getKey().toString(), headerKey.getValue().toString());
+    private boolean isOriginAllowed(String origin) {
+        // requests without Origin are not cross-origin, they keep the previous "*" answer only in any-origin mode
+        return anyOrigin || (origin != null && allowedOrigins.contains(origin));
+    }
+
+    private boolean isPreflightAllowed(HttpServletRequest request) {
+        String method = request.getHeader(REQUEST_METHOD);
+        if (method != null && !allowedMethods.contains(method.toUpperCase(Locale.ROOT))) {
+            return false;
+        }
+
+        String headers = request.getHeader(REQUEST_HEADERS);
+        if (headers == null || headers.isEmpty()) {
+            return true;
+        }
+        Boolean decision = preflightHeaderDecisions.get(headers);
+        if (decision == null) {
+            decision = allowedHeaders.containsAll(toSet(headers.toLowerCase(Locale.ROOT), false));
+            if (preflightHeaderDecisions.size() < PREFLIGHT_CACHE_SIZE) {
+                preflightHeaderDecisions.put(headers, decision);
+            }
+        }
+        return decision;
+    }
+
+    private static Set<String> toSet(String values, boolean upperCase) {
+        Set<String> set = new LinkedHashSet<>();
+        for (String value : values.split(",")) {
+            String trimmed = value.trim();
+            if (!trimmed.isEmpty()) set.add(upperCase ? trimmed.toUpperCase(Locale.ROOT) : trimmed);
+        }
+        return Collections.unmodifiableSet(set);
     }
 }
@@ -0,0 +1,43 @@
+package info.doula.security.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import info.doula.system.MetricsReporter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Connection pool figures of a Hikari data source
+ *
+ * @author hossaindoula
+ */
+public class DataSourceMetricsReporter implements MetricsReporter {
+
+    private final String name;
+    private final HikariDataSource dataSource;
+
+    public DataSourceMetricsReporter(String name, HikariDataSource dataSource) {
+        this.name = name;
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Map<String, Object> report() {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("maximumPoolSize", dataSource.getMaximumPoolSize());
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        if (pool != null) {
+            report.put("active", pool.getActiveConnections());
+            report.put("idle", pool.getIdleConnections());
+            report.put("total", pool.getTotalConnections());
+            report.put("awaiting", pool.getThreadsAwaitingConnection());
+        }
+        return report;
+    }
+}
@@ -0,0 +1,45 @@
+package info.doula.security.config;
+
+import info.doula.security.token.JwtRevocationList;
+import info.doula.security.token.RevocableJwtTokenStore;
+import info.doula.security.token.RotatingJwtAccessTokenConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
+
+import java.util.Arrays;
+
+/**
+ * Beans of the JWT token mode, active with security.token.mode=jwt
+ * Tokens are signed with security.token.jwt.signing-key. When the key is rotated the old one goes to
+ * security.token.jwt.previous-keys (comma separated) until the tokens signed with it have expired.
+ * An RSA private signing key needs its public key in security.token.jwt.verifier-key.
+ *
+ * @author hossaindoula
+ */
+@Configuration
+@ConditionalOnProperty(name = "security.token.mode", havingValue = "jwt")
+public class JwtTokenConfig {
+
+    @Value("${security.token.jwt.signing-key}")
+    private String signingKey;
+
+    @Value("${security.token.jwt.verifier-key:}")
+    private String verifierKey;
+
+    @Value("${security.token.jwt.previous-keys:}")
+    private String previousKeys;
+
+    @Bean
+    public RotatingJwtAccessTokenConverter jwtAccessTokenConverter() {
+        return new RotatingJwtAccessTokenConverter(signingKey, verifierKey,
+                Arrays.asList(StringUtils.commaDelimitedListToStringArray(previousKeys)));
+    }
+
+    @Bean
+    public RevocableJwtTokenStore jwtTokenStore() {
+        return new RevocableJwtTokenStore(jwtAccessTokenConverter(), new JwtRevocationList());
+    }
+}
@@ -0,0 +1,86 @@
+package info.doula.security.config;
+
+import info.doula.security.CustomTokenEnhancer;
+import info.doula.security.token.CachingTokenStore;
+import info.doula.security.token.RevocableJwtTokenStore;
+import info.doula.security.token.RotatingJwtAccessTokenConverter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.security.oauth2.provider.token.DefaultTokenServices;
+import org.springframework.security.oauth2.provider.token.TokenEnhancer;
+import org.springframework.security.oauth2.provider.token.TokenEnhancerChain;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+import org.springframework.security.oauth2.provider.token.store.JdbcTokenStore;
+
+import javax.sql.DataSource;
+import java.util.Arrays;
+
+/**
+ * Token store, token enhancer and token services shared by the authorization and the resource server
+ *
+ * @author hossaindoula
+ */
+@Configuration
+public class OAuth2TokenConfig {
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Value("${tokenstore.cache.size:10000}")
+    private long tokenCacheSize;
+
+    @Value("${tokenstore.cache.ttl:60}")
+    private long tokenCacheTtl;
+
+    /** present in JWT token mode only, see JwtTokenConfig */
+    @Autowired(required = false)
+    private RotatingJwtAccessTokenConverter jwtAccessTokenConverter;
+
+    @Autowired(required = false)
+    @Qualifier("jwtTokenStore")
+    private RevocableJwtTokenStore jwtTokenStore;
+
+    /**
+     * JWT token store in JWT token mode, the signature is verified locally without a database lookup,
+     * otherwise the JDBC token store behind a near-cache, see tokenstore.cache.* for its size and ttl
+     * @return tokenStore
+     */
+    @Bean
+    public TokenStore tokenStore() {
+        if (jwtTokenStore != null) return jwtTokenStore;
+        return new CachingTokenStore(new JdbcTokenStore(dataSource), tokenCacheSize, tokenCacheTtl);
+    }
+
+    /**
+     * In JWT token mode the custom claims are added first and then signed into the token
+     * @return tokenEnhancer
+     */
+    @Bean
+    public TokenEnhancer tokenEnhancer() {
+        if (jwtAccessTokenConverter == null) return new CustomTokenEnhancer();
+
+        TokenEnhancerChain chain = new TokenEnhancerChain();
+        chain.setTokenEnhancers(Arrays.asList(new CustomTokenEnhancer(), jwtAccessTokenConverter));
+        return chain;
+    }
+
+    /**
+     * This method is responsible for getting default token services
+     * @return defaultTokenService
+     */
+    @Bean
+    @Primary
+    public DefaultTokenServices tokenServices() {
+        final DefaultTokenServices defaultTokenServices = new DefaultTokenServices();
+        defaultTokenServices.setTokenStore(tokenStore());
+        defaultTokenServices.setSupportRefreshToken(true);
+        if (jwtAccessTokenConverter != null) {
+            defaultTokenServices.setTokenEnhancer(tokenEnhancer());
+        }
+        return defaultTokenServices;
+    }
+}
@@ -78,7 +78,7 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
         // @formatter:off
         http.authorizeRequests().antMatchers("/login").permitAll()
                 .antMatchers("/oauth/token/revokeById/**").permitAll()
-                .antMatchers("/tokens/**").permitAll()
+                .antMatchers("/tokens/**").hasRole("ADMIN")
                 .antMatchers("/api/v1/administrators/create").permitAll()
                 .antMatchers("/oauth/token").permitAll()
                 .anyRequest().authenticated()
@@ -0,0 +1,106 @@
+package info.doula.security.config.refresh;
+
+import info.doula.security.service.ClientDetailsChangedEvent;
+import info.doula.security.service.ClientDetailsManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.security.crypto.codec.Base64;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The "Authorization" header value the gateway sends with the client credentials
+ * It is built from the client details and rebuilt when a ClientDetailsChangedEvent is published, or at the
+ * latest client.authorization-header.ttl-seconds after it was built, so a change made without the event
+ * is picked up too. When a rebuild fails the previous value is kept and the rebuild is retried
+ * client.authorization-header.retry-seconds later, only a header which was never built fails the request.
+ *
+ * @author hossaindoula
+ */
+@Component
+public class ClientAuthorizationHeader {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private ClientDetailsManager clientDetailsManager;
+
+    @Value("${client.authorization-header.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    @Value("${client.authorization-header.retry-seconds:5}")
+    private long retrySeconds;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private volatile String value;
+    private volatile long expiresAt;
+
+    /**
+     * @return the header value, built on first use and after it expired
+     */
+    public String get() {
+        String header = value;
+        if (header != null && System.currentTimeMillis() < expiresAt) return header;
+        if (header == null) {
+            lock.lock();
+        } else if (!lock.tryLock()) {
+            // another request is rebuilding it, the current value is still good meanwhile
+            return header;
+        }
+        try {
+            if (value == null || System.currentTimeMillis() >= expiresAt) {
+                try {
+                    rebuild();
+                } catch (RuntimeException e) {
+                    if (value == null) throw e;
+                    expiresAt = System.currentTimeMillis() + retrySeconds * 1000L;
+                    logger.error("Error occured while refreshing the client authorization header, keeping the previous one", e);
+                }
+            }
+            return value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Rebuild the header value from the current client details
+     */
+    public void refresh() {
+        lock.lock();
+        try {
+            rebuild();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @EventListener
+    public void onClientDetailsChanged(ClientDetailsChangedEvent event) {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            // rebuilt on the next request instead, the previous value is kept until that succeeds
+            expiresAt = 0L;
+            logger.error("Error occured while refreshing the client authorization header", e);
+        }
+    }
+
+    private void rebuild() {
+        value = build();
+        expiresAt = System.currentTimeMillis() + ttlSeconds * 1000L;
+    }
+
+    private String build() {
+        String clientIdSecretCombo = clientDetailsManager.get("client.details.key").getClientId()
+                + clientDetailsManager.get("client.details.secret").getClientSecret();
+        return "Basic " + new String(Base64.encode(clientIdSecretCombo.getBytes(StandardCharsets.UTF_8)),
+                StandardCharsets.US_ASCII);
+    }
+}
@@ -1,69 +1,130 @@
 package info.doula.security.config.refresh;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.netflix.zuul.ZuulFilter;
 import com.netflix.zuul.context.RequestContext;
-import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
 
 import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
+/**
+ * Moves the refresh token of a token response into an http only cookie
+ * Only token endpoint responses are filtered, every other response is passed through as it is.
+ * The token response is rewritten token by token, the refresh_token field is dropped while copying.
+ */
 @Component
 public class CustomPostZuulFilter extends ZuulFilter {
 
+    private static final String REFRESH_TOKEN = "refresh_token";
+
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
-    private final ObjectMapper mapper = new ObjectMapper();
+    private final JsonFactory jsonFactory = new JsonFactory();
 
+    @Value("${zuul.token.path:/oauth/token}")
+    private String tokenPath;
 
     @Override
     public Object run() {
         final RequestContext ctx = RequestContext.getCurrentContext();
-        logger.info("in zuul filter " + ctx.getRequest().getRequestURI());
+        final HttpServletRequest request = ctx.getRequest();
 
-        String requestURI = ctx.getRequest().getRequestURI();
-        String requestMethod = ctx.getRequest().getMethod();
+        if ("DELETE".equals(request.getMethod())) {
+            Cookie cookie = new Cookie("refreshToken", "");
+            cookie.setMaxAge(0);
+            cookie.setPath(request.getContextPath() + "/oauth/token");
+            ctx.getResponse().addCookie(cookie);
+            return null;
+        }
 
         try {
-            final InputStream is = ctx.getResponseDataStream();
-            String responseBody = IOUtils.toString(is, "UTF-8");
-            if (responseBody.contains("refresh_token")) {
-                final Map<String, Object> responseMap = mapper.readValue(responseBody, new TypeReference<Map<String, Object>>() {
-                });
-                final String refreshToken = responseMap.get("refresh_token").toString();
-                responseMap.remove("refresh_token");
-                responseBody = mapper.writeValueAsString(responseMap);
-
+            final String refreshToken = stripRefreshToken(ctx);
+            if (refreshToken != null) {
                 final Cookie cookie = new Cookie("refreshToken", refreshToken);
                 cookie.setHttpOnly(true);
                 // cookie.setSecure(true);
-                cookie.setPath(ctx.getRequest().getContextPath() + "/oauth/token");
+                cookie.setPath(request.getContextPath() + "/oauth/token");
                 cookie.setMaxAge(2592000); // 30 days
                 ctx.getResponse().addCookie(cookie);
-                logger.info("refresh token = " + refreshToken);
-
-            } else if (requestURI.contains("oauth/token") && requestMethod.equals("DELETE")) {
-                Cookie cookie = new Cookie("refreshToken", "");
-                cookie.setMaxAge(0);
-                cookie.setPath(ctx.getRequest().getContextPath() + "/oauth/token");
-                ctx.getResponse().addCookie(cookie);
             }
-            ctx.setResponseBody(responseBody);
-
         } catch (final IOException e) {
             logger.error("Error occured in zuul post filter", e);
         }
         return null;
     }
 
+    /**
+     * Copy the response JSON without its top level refresh_token field
+     * The body is read whole first, a body which is not token JSON is put back as it came in. A body which
+     * could not even be read whole is not forwarded half way, the response becomes a 502 without body.
+     *
+     * @return the removed refresh token, null if there was none
+     */
+    private String stripRefreshToken(RequestContext ctx) throws IOException {
+        InputStream is = ctx.getResponseDataStream();
+        if (is == null) return null;
+
+        byte[] body;
+        try (InputStream in = is) {
+            body = StreamUtils.copyToByteArray(in);
+        } catch (IOException e) {
+            ctx.setResponseStatusCode(HttpServletResponse.SC_BAD_GATEWAY);
+            ctx.setResponseGZipped(false);
+            ctx.setResponseDataStream(new ByteArrayInputStream(new byte[0]));
+            ctx.setOriginContentLength(0L);
+            throw e;
+        }
+
+        String refreshToken = null;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(512);
+        InputStream json = new ByteArrayInputStream(body);
+        try (JsonParser parser = jsonFactory.createParser(ctx.getResponseGZipped() ? new GZIPInputStream(json) : json);
+             JsonGenerator generator = jsonFactory.createGenerator(out)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token == JsonToken.FIELD_NAME && parser.getParsingContext().getParent().inRoot()
+                        && REFRESH_TOKEN.equals(parser.getCurrentName())) {
+                    parser.nextToken();
+                    refreshToken = parser.getValueAsString();
+                    parser.skipChildren();
+                    continue;
+                }
+                generator.copyCurrentEvent(parser);
+            }
+        } catch (IOException e) {
+            // replayed with its encoding untouched
+            ctx.setResponseDataStream(new ByteArrayInputStream(body));
+            throw e;
+        }
+
+        ctx.setResponseGZipped(false);
+        ctx.setResponseDataStream(new ByteArrayInputStream(out.toByteArray()));
+        ctx.setOriginContentLength((long) out.size());
+        return refreshToken;
+    }
+
     @Override
     public boolean shouldFilter() {
-        return true;
+        final RequestContext ctx = RequestContext.getCurrentContext();
+        final HttpServletRequest request = ctx.getRequest();
+        if (!request.getRequestURI().contains(tokenPath)) {
+            return false;
+        }
+        String method = request.getMethod();
+        return "DELETE".equals(method) || ("POST".equals(method) && ctx.getResponseStatusCode() == 200);
     }
 
     @Override
@@ -76,4 +137,4 @@ public class CustomPostZuulFilter extends ZuulFilter {
         return "post";
     }
 
-}
\ No newline at end of file
+}
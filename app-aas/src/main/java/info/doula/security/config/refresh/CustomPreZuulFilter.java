@@ -1,17 +1,14 @@
 package info.doula.security.config.refresh;
 
-import java.io.UnsupportedEncodingException;
 import java.util.HashMap;
 import java.util.Map;
 
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 
-import info.doula.security.service.ClientDetailsManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.crypto.codec.Base64;
 import org.springframework.stereotype.Component;
 
 import com.netflix.zuul.ZuulFilter;
@@ -26,35 +23,25 @@ public class CustomPreZuulFilter extends ZuulFilter {
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
     @Autowired
-    private ClientDetailsManager clientDetailsManager;
+    private ClientAuthorizationHeader clientAuthorizationHeader;
 
     @Override
     public Object run() {
         final RequestContext ctx = RequestContext.getCurrentContext();
-        logger.info("in zuul filter " + ctx.getRequest().getRequestURI());
-        byte[] encoded;
-        try {
-            String clientIdSecretCombo = clientDetailsManager.get("client.details.key").getClientId()
-                    + clientDetailsManager.get("client.details.secret").getClientSecret();
-
-            encoded = Base64.encode(clientIdSecretCombo.getBytes("UTF-8"));
-            ctx.addZuulRequestHeader("Authorization", "Basic " + new String(encoded));
-            logger.info("pre filter");
-            logger.info(ctx.getRequest().getHeader("Authorization"));
-
-            final HttpServletRequest req = ctx.getRequest();
-
-            final String refreshToken = extractRefreshToken(req);
-            if (refreshToken != null) {
-                final Map<String, String[]> param = new HashMap<>();
-                param.put("refresh_token", new String[] { refreshToken });
-                param.put("grant_type", new String[] { "refresh_token" });
-
-                ctx.setRequest(new CustomHttpServletRequest(req, param));
-            }
+        if (logger.isDebugEnabled()) {
+            logger.debug("in zuul filter " + ctx.getRequest().getRequestURI());
+        }
+        ctx.addZuulRequestHeader("Authorization", clientAuthorizationHeader.get());
+
+        final HttpServletRequest req = ctx.getRequest();
+
+        final String refreshToken = extractRefreshToken(req);
+        if (refreshToken != null) {
+            final Map<String, String[]> param = new HashMap<>();
+            param.put("refresh_token", new String[] { refreshToken });
+            param.put("grant_type", new String[] { "refresh_token" });
 
-        } catch (final UnsupportedEncodingException e) {
-            logger.error("Error occured in pre filter", e);
+            ctx.setRequest(new CustomHttpServletRequest(req, param));
         }
 
         return null;
@@ -1,20 +1,33 @@
 package info.doula.security.controllers;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import info.doula.exception.BadRequestException;
+import info.doula.security.service.TokenManager;
+import info.doula.security.service.TokenPage;
 import io.swagger.annotations.Api;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
 import org.springframework.security.oauth2.provider.token.ConsumerTokenServices;
 import org.springframework.security.oauth2.provider.token.TokenStore;
-import org.springframework.security.oauth2.provider.token.store.JdbcTokenStore;
 import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.annotation.Resource;
 import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
 
 @Controller
@@ -28,6 +41,16 @@ public class TokenRevokeController {
     @Resource(name = "tokenStore")
     TokenStore tokenStore;
 
+    @Autowired
+    TokenManager tokenManager;
+
+    /** the /tokens endpoints read and revoke the tokens of every client, also checked in WebSecurityConfig */
+    private static final String ADMIN = "hasRole('ADMIN')";
+
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+
     @RequestMapping(method = RequestMethod.POST, value = "/oauth/token/revokeById/{tokenId}")
     @ResponseBody
     public ResponseEntity<?> revokeToken(HttpServletRequest request, @PathVariable String tokenId) {
@@ -37,26 +60,100 @@ public class TokenRevokeController {
         return ResponseEntity.status(HttpStatus.OK).body(response);
     }
 
+    /**
+     * Access tokens of a client and/or user, one page at a time
+     * @param clientId
+     * @param userName
+     * @param after cursor of the previous page
+     * @param size
+     * @return tokens and the cursor of the next page
+     */
+    @PreAuthorize(ADMIN)
     @RequestMapping(method = RequestMethod.GET, value = "/tokens")
     @ResponseBody
-    public List<String> getTokens() {
-        List<String> tokenValues = new ArrayList<>();
-        Collection<OAuth2AccessToken> tokens = tokenStore.findTokensByClientId("sampleClientId");
-        if (tokens != null)
-            for (OAuth2AccessToken token : tokens)
-                tokenValues.add(token.getValue());
+    public TokenPage getTokens(@RequestParam(required = false) String clientId,
+                               @RequestParam(required = false) String userName,
+                               @RequestParam(required = false) String after,
+                               @RequestParam(defaultValue = "100") int size) {
+        return tokenManager.findTokens(clientId, userName, after, Math.min(Math.max(size, 1), MAX_PAGE_SIZE));
+    }
+
+    /**
+     * Every access token of a client and/or user as a JSON array, written while the rows are read
+     * @param clientId
+     * @param userName
+     * @return streaming body
+     */
+    @PreAuthorize(ADMIN)
+    @RequestMapping(method = RequestMethod.GET, value = "/tokens/stream", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public StreamingResponseBody streamTokens(@RequestParam(required = false) String clientId,
+                                              @RequestParam(required = false) String userName) {
+        return out -> {
+            try (JsonGenerator generator = jsonFactory.createGenerator(out)) {
+                generator.writeStartArray();
+                tokenManager.streamTokens(clientId, userName, token -> {
+                    try {
+                        generator.writeString(token.getValue());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                generator.writeEndArray();
+            }
+        };
+    }
+
+    @PreAuthorize(ADMIN)
+    @RequestMapping(method = RequestMethod.POST, value = "/tokens/revokeByClient/{clientId:.*}")
+    @ResponseBody
+    public ResponseEntity<?> revokeClientTokens(@PathVariable String clientId) throws BadRequestException {
+        int revoked = tokenManager.revokeByClientId(clientId);
+        return revoked("The tokens of the client : " + clientId + " are revoked from the server", revoked);
+    }
 
-        return tokenValues;
+    @PreAuthorize(ADMIN)
+    @RequestMapping(method = RequestMethod.POST, value = "/tokens/revokeByUser/{userName:.*}")
+    @ResponseBody
+    public ResponseEntity<?> revokeUserTokens(@PathVariable String userName,
+                                              @RequestParam(required = false) String clientId)
+            throws BadRequestException {
+        int revoked = tokenManager.revokeByUserName(clientId, userName);
+        return revoked("The tokens of the user : " + userName + " are revoked from the server", revoked);
     }
 
+    @PreAuthorize(ADMIN)
+    @RequestMapping(method = RequestMethod.POST, value = "/tokens/revoke")
+    @ResponseBody
+    public ResponseEntity<?> revokeTokens(@RequestBody List<String> tokenValues) {
+        int revoked = tokenManager.revokeByValues(tokenValues);
+        return revoked("The access tokens are revoked from the server", revoked);
+    }
+
+    @PreAuthorize(ADMIN)
     @RequestMapping(method = RequestMethod.POST, value = "/tokens/revokeRefreshToken/{tokenId:.*}")
     @ResponseBody
     public ResponseEntity<?> revokeRefreshToken(@PathVariable String tokenId) {
-        if (tokenStore instanceof JdbcTokenStore)
-            ((JdbcTokenStore) tokenStore).removeRefreshToken(tokenId);
+        // going through the store keeps its cache in line with the database
+        tokenStore.removeRefreshToken(new DefaultOAuth2RefreshToken(tokenId));
         Map<String, Object> response = new HashMap<>();
         response.put("message", "The refresh token : " + tokenId + " is revoked from the server");
         return ResponseEntity.status(HttpStatus.OK).body(response);
     }
 
+    @ExceptionHandler(BadRequestException.class)
+    @ResponseBody
+    public ResponseEntity<?> badRequest(BadRequestException e) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("message", e.getMessage());
+        return ResponseEntity.status(e.getServiceStatus()).body(response);
+    }
+
+    private ResponseEntity<?> revoked(String message, int revoked) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("message", message);
+        response.put("revoked", revoked);
+        return ResponseEntity.status(HttpStatus.OK).body(response);
+    }
+
 }
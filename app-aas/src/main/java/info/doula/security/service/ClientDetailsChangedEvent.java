@@ -0,0 +1,22 @@
+package info.doula.security.service;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published after a client's id or secret has changed, so cached client credentials are rebuilt
+ *
+ * @author hossaindoula
+ */
+public class ClientDetailsChangedEvent extends ApplicationEvent {
+
+    private final String clientId;
+
+    public ClientDetailsChangedEvent(Object source, String clientId) {
+        super(source);
+        this.clientId = clientId;
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+}
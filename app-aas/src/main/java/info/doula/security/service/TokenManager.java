@@ -0,0 +1,62 @@
+package info.doula.security.service;
+
+import info.doula.exception.BadRequestException;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/**
+ * Listing and bulk revocation of the stored access tokens
+ *
+ * @author hossaindoula
+ */
+public interface TokenManager {
+
+    /**
+     * One page of access tokens, ordered by token key
+     *
+     * @param clientId client id, null for all clients
+     * @param userName user name, null for all users
+     * @param after cursor returned with the previous page, null for the first page
+     * @param size page size
+     * @return token page
+     */
+    TokenPage findTokens(String clientId, String userName, String after, int size);
+
+    /**
+     * Hand every matching access token to the consumer while the rows are read
+     *
+     * @param clientId client id, null for all clients
+     * @param userName user name, null for all users
+     * @param consumer token consumer
+     */
+    void streamTokens(String clientId, String userName, Consumer<OAuth2AccessToken> consumer);
+
+    /**
+     * Revoke every access and refresh token of a client in one transaction
+     *
+     * @param clientId client id
+     * @return number of revoked access tokens
+     * @throws BadRequestException if the tokens are not stored, e.g. JWTs
+     */
+    int revokeByClientId(String clientId) throws BadRequestException;
+
+    /**
+     * Revoke every access and refresh token of a user in one transaction
+     *
+     * @param clientId client id, null for all clients
+     * @param userName user name
+     * @return number of revoked access tokens
+     * @throws BadRequestException if the tokens are not stored, e.g. JWTs
+     */
+    int revokeByUserName(String clientId, String userName) throws BadRequestException;
+
+    /**
+     * Revoke the given access tokens and their refresh tokens in one transaction
+     *
+     * @param tokenValues access token values
+     * @return number of revoked access tokens
+     */
+    int revokeByValues(Collection<String> tokenValues);
+}
@@ -0,0 +1,30 @@
+package info.doula.security.service;
+
+import java.util.List;
+
+/**
+ * A page of access token values and the cursor of the next page
+ *
+ * @author hossaindoula
+ */
+public class TokenPage {
+
+    private final List<String> tokens;
+    private final String next;
+
+    public TokenPage(List<String> tokens, String next) {
+        this.tokens = tokens;
+        this.next = next;
+    }
+
+    public List<String> getTokens() {
+        return tokens;
+    }
+
+    /**
+     * @return cursor of the next page, null on the last page
+     */
+    public String getNext() {
+        return next;
+    }
+}
@@ -0,0 +1,212 @@
+package info.doula.security.service.impl;
+
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
+import info.doula.exception.BadRequestException;
+import info.doula.security.service.TokenManager;
+import info.doula.security.service.TokenPage;
+import info.doula.security.token.CachingTokenStore;
+import info.doula.security.token.RevocableJwtTokenStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.common.util.SerializationUtils;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * TokenManager on the tables of the JDBC token store
+ * Revocations are set based deletes, a whole client or user is revoked with two statements in one transaction.
+ * In JWT mode tokens are not stored: revoking by values goes through the token store, which puts the
+ * token ids on the revocation list, and revoking a whole client or user is not supported.
+ *
+ * @author hossaindoula
+ */
+@Service
+public class JdbcTokenManager implements TokenManager {
+
+    private static final int IN_CLAUSE_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    /** rows read per query while streaming */
+    private final int streamPageSize;
+
+    @Autowired
+    @Qualifier("tokenStore")
+    private TokenStore tokenStore;
+
+    @Autowired
+    public JdbcTokenManager(DataSource dataSource, @Value("${tokenstore.stream.fetch-size:500}") int fetchSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.streamPageSize = Math.max(1, fetchSize);
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    @Override
+    public TokenPage findTokens(String clientId, String userName, String after, int size) {
+        List<Object> args = new ArrayList<>(4);
+        StringBuilder sql = new StringBuilder("select token_id, token from oauth_access_token");
+        where(sql, args, clientId, userName);
+        if (after != null) {
+            sql.append(args.isEmpty() ? " where" : " and").append(" token_id > ?");
+            args.add(after);
+        }
+        sql.append(" order by token_id limit ?");
+        args.add(size);
+
+        List<String> keys = new ArrayList<>(size);
+        List<String> tokens = jdbcTemplate.query(sql.toString(), args.toArray(), (rs, rowNum) -> {
+            keys.add(rs.getString(1));
+            return SerializationUtils.<OAuth2AccessToken>deserialize(rs.getBytes(2)).getValue();
+        });
+        return new TokenPage(tokens, tokens.size() < size ? null : keys.get(keys.size() - 1));
+    }
+
+    /**
+     * Reads the rows in keyset pages of tokenstore.stream.fetch-size, so no more than one page is held in
+     * memory on any driver; a JDBC fetch size alone does not stream on MySQL Connector/J without cursor fetch.
+     */
+    @Override
+    public void streamTokens(String clientId, String userName, Consumer<OAuth2AccessToken> consumer) {
+        String after = null;
+        while (true) {
+            List<Object> args = new ArrayList<>(4);
+            StringBuilder sql = new StringBuilder("select token_id, token from oauth_access_token");
+            where(sql, args, clientId, userName);
+            if (after != null) {
+                sql.append(args.isEmpty() ? " where" : " and").append(" token_id > ?");
+                args.add(after);
+            }
+            sql.append(" order by token_id limit ?");
+            args.add(streamPageSize);
+
+            String[] last = new String[1];
+            int[] rows = new int[1];
+            jdbcTemplate.query(sql.toString(), args.toArray(), (RowCallbackHandler) rs -> {
+                last[0] = rs.getString(1);
+                rows[0]++;
+                consumer.accept(SerializationUtils.<OAuth2AccessToken>deserialize(rs.getBytes(2)));
+            });
+            if (rows[0] < streamPageSize) return;
+            after = last[0];
+        }
+    }
+
+    @Override
+    public int revokeByClientId(String clientId) throws BadRequestException {
+        checkStoredTokens();
+        return revoke("client_id = ?", clientId);
+    }
+
+    @Override
+    public int revokeByUserName(String clientId, String userName) throws BadRequestException {
+        checkStoredTokens();
+        return clientId == null
+                ? revoke("user_name = ?", userName)
+                : revoke("client_id = ? and user_name = ?", clientId, userName);
+    }
+
+    @Override
+    public int revokeByValues(Collection<String> tokenValues) {
+        if (tokenValues.isEmpty()) return 0;
+        if (tokenStore instanceof RevocableJwtTokenStore) return revokeJwts(tokenValues);
+
+        List<String> keys = new ArrayList<>(tokenValues.size());
+        for (String value : tokenValues) {
+            keys.add(extractTokenKey(value));
+        }
+        int revoked = transactionTemplate.execute(status -> {
+            int count = 0;
+            for (List<String> chunk : Lists.partition(keys, IN_CLAUSE_SIZE)) {
+                String in = "token_id in (" + String.join(",", Collections.nCopies(chunk.size(), "?")) + ")";
+                Object[] args = chunk.toArray();
+                jdbcTemplate.update("delete from oauth_refresh_token where token_id in "
+                        + "(select refresh_token from oauth_access_token where " + in + ")", args);
+                count += jdbcTemplate.update("delete from oauth_access_token where " + in, args);
+            }
+            return count;
+        });
+        if (tokenStore instanceof CachingTokenStore) {
+            for (String value : tokenValues) {
+                ((CachingTokenStore) tokenStore).invalidate(value);
+            }
+        }
+        return revoked;
+    }
+
+    /**
+     * Put the ids of the valid tokens on the revocation list, invalid or already revoked tokens are skipped
+     */
+    private int revokeJwts(Collection<String> tokenValues) {
+        int revoked = 0;
+        for (String value : tokenValues) {
+            OAuth2AccessToken token;
+            try {
+                token = tokenStore.readAccessToken(value);
+            } catch (InvalidTokenException e) {
+                continue;
+            }
+            if (token == null) continue;
+            tokenStore.removeAccessToken(token);
+            if (token.getRefreshToken() != null) tokenStore.removeRefreshToken(token.getRefreshToken());
+            revoked++;
+        }
+        return revoked;
+    }
+
+    /**
+     * JWTs are not stored, there is nothing to find the tokens of a client or user in
+     */
+    private void checkStoredTokens() throws BadRequestException {
+        if (tokenStore instanceof RevocableJwtTokenStore) {
+            throw new BadRequestException("revoking all tokens of a client or user is not supported "
+                    + "with security.token.mode=jwt, revoke the token values instead");
+        }
+    }
+
+    private int revoke(String condition, Object... args) {
+        int revoked = transactionTemplate.execute(status -> {
+            jdbcTemplate.update("delete from oauth_refresh_token where token_id in "
+                    + "(select refresh_token from oauth_access_token where " + condition + ")", args);
+            return jdbcTemplate.update("delete from oauth_access_token where " + condition, args);
+        });
+        if (revoked > 0 && tokenStore instanceof CachingTokenStore) {
+            // the cache is keyed by token, drop it all instead of reading the revoked tokens back
+            ((CachingTokenStore) tokenStore).invalidateAll();
+        }
+        return revoked;
+    }
+
+    private static void where(StringBuilder sql, List<Object> args, String clientId, String userName) {
+        if (clientId != null) {
+            sql.append(" where client_id = ?");
+            args.add(clientId);
+        }
+        if (userName != null) {
+            sql.append(args.isEmpty() ? " where" : " and").append(" user_name = ?");
+            args.add(userName);
+        }
+    }
+
+    /**
+     * Same key as JdbcTokenStore, the MD5 of the token value
+     */
+    private static String extractTokenKey(String value) {
+        return Hashing.md5().hashString(value, StandardCharsets.UTF_8).toString();
+    }
+}
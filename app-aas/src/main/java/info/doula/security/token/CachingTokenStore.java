@@ -0,0 +1,223 @@
+package info.doula.security.token;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.Hashing;
+import info.doula.system.MetricsReporter;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TokenStore decorator with a bounded near-cache of access tokens and their authentication
+ * Entries are keyed by the SHA-256 of the token value and live at most until the token expires
+ * (or the configured ttl, whichever comes first). Removing a token through this store invalidates
+ * the cache entry at once, other nodes see the revocation after the ttl at the latest.
+ *
+ * @author hossaindoula
+ */
+public class CachingTokenStore implements TokenStore, MetricsReporter {
+
+    private final TokenStore delegate;
+    private final long ttlMillis;
+    private final Cache<String, Entry> cache;
+
+    /** token and authentication reads answered from the cache, counted per avoided database query */
+    private final LongAdder queriesSaved = new LongAdder();
+    /** token and authentication reads which went to the delegate */
+    private final LongAdder queries = new LongAdder();
+
+    /**
+     * Constructor
+     *
+     * @param delegate the token store holding the tokens, e.g. JdbcTokenStore
+     * @param maximumSize maximum number of cached tokens
+     * @param ttlSeconds maximum time a token is served from the cache
+     */
+    public CachingTokenStore(TokenStore delegate, long maximumSize, long ttlSeconds) {
+        this.delegate = delegate;
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    public TokenStore getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public OAuth2Authentication readAuthentication(OAuth2AccessToken token) {
+        return readAuthentication(token.getValue());
+    }
+
+    @Override
+    public OAuth2Authentication readAuthentication(String token) {
+        String key = key(token);
+        Entry entry = cached(key);
+        if (entry != null && entry.authentication != null) {
+            queriesSaved.increment();
+            return entry.authentication;
+        }
+
+        queries.increment();
+        OAuth2Authentication authentication = delegate.readAuthentication(token);
+        if (entry != null && authentication != null) {
+            entry.authentication = authentication;
+        }
+        return authentication;
+    }
+
+    @Override
+    public OAuth2AccessToken readAccessToken(String tokenValue) {
+        String key = key(tokenValue);
+        Entry entry = cached(key);
+        if (entry != null) {
+            queriesSaved.increment();
+            return entry.accessToken;
+        }
+
+        queries.increment();
+        OAuth2AccessToken accessToken = delegate.readAccessToken(tokenValue);
+        if (accessToken != null && !accessToken.isExpired()) {
+            cache.put(key, new Entry(accessToken, expiresAt(accessToken)));
+        }
+        return accessToken;
+    }
+
+    @Override
+    public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
+        delegate.storeAccessToken(token, authentication);
+        cache.invalidate(key(token.getValue()));
+    }
+
+    @Override
+    public void removeAccessToken(OAuth2AccessToken token) {
+        cache.invalidate(key(token.getValue()));
+        delegate.removeAccessToken(token);
+    }
+
+    @Override
+    public void storeRefreshToken(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
+        delegate.storeRefreshToken(refreshToken, authentication);
+    }
+
+    @Override
+    public OAuth2RefreshToken readRefreshToken(String tokenValue) {
+        return delegate.readRefreshToken(tokenValue);
+    }
+
+    @Override
+    public OAuth2Authentication readAuthenticationForRefreshToken(OAuth2RefreshToken token) {
+        return delegate.readAuthenticationForRefreshToken(token);
+    }
+
+    @Override
+    public void removeRefreshToken(OAuth2RefreshToken token) {
+        invalidateByRefreshToken(token);
+        delegate.removeRefreshToken(token);
+    }
+
+    @Override
+    public void removeAccessTokenUsingRefreshToken(OAuth2RefreshToken refreshToken) {
+        invalidateByRefreshToken(refreshToken);
+        delegate.removeAccessTokenUsingRefreshToken(refreshToken);
+    }
+
+    @Override
+    public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
+        return delegate.getAccessToken(authentication);
+    }
+
+    @Override
+    public Collection<OAuth2AccessToken> findTokensByClientIdAndUserName(String clientId, String userName) {
+        return delegate.findTokensByClientIdAndUserName(clientId, userName);
+    }
+
+    @Override
+    public Collection<OAuth2AccessToken> findTokensByClientId(String clientId) {
+        return delegate.findTokensByClientId(clientId);
+    }
+
+    /**
+     * Drop a cached token, e.g. after it was removed from the database without going through this store
+     */
+    public void invalidate(String tokenValue) {
+        cache.invalidate(key(tokenValue));
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public String getName() {
+        return "tokenStore";
+    }
+
+    @Override
+    public Map<String, Object> report() {
+        CacheStats stats = cache.stats();
+        Map<String, Object> report = new LinkedHashMap<>();
+        long saved = queriesSaved.sum();
+        long made = queries.sum();
+        report.put("size", cache.size());
+        // a request looks the token up twice (token, then authentication), the cache lookups are not the reads
+        report.put("lookups", stats.requestCount());
+        report.put("evictions", stats.evictionCount());
+        report.put("dbQueries", made);
+        report.put("dbQueriesSaved", saved);
+        report.put("hitRatio", saved + made == 0 ? 1.0 : (double) saved / (saved + made));
+        return report;
+    }
+
+    private Entry cached(String key) {
+        Entry entry = cache.getIfPresent(key);
+        if (entry != null && entry.expiresAt <= System.currentTimeMillis()) {
+            cache.invalidate(key);
+            return null;
+        }
+        return entry;
+    }
+
+    private long expiresAt(OAuth2AccessToken accessToken) {
+        long capped = System.currentTimeMillis() + ttlMillis;
+        if (accessToken.getExpiration() == null) {
+            return capped;
+        }
+        return Math.min(capped, accessToken.getExpiration().getTime());
+    }
+
+    private void invalidateByRefreshToken(OAuth2RefreshToken refreshToken) {
+        if (refreshToken == null) return;
+        String value = refreshToken.getValue();
+        cache.asMap().values().removeIf(entry -> entry.accessToken.getRefreshToken() != null
+                && value.equals(entry.accessToken.getRefreshToken().getValue()));
+    }
+
+    private static String key(String tokenValue) {
+        return Hashing.sha256().hashString(tokenValue, StandardCharsets.UTF_8).toString();
+    }
+
+    private static class Entry {
+        private final OAuth2AccessToken accessToken;
+        private final long expiresAt;
+        private volatile OAuth2Authentication authentication;
+
+        Entry(OAuth2AccessToken accessToken, long expiresAt) {
+            this.accessToken = accessToken;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
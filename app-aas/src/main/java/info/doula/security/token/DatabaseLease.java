@@ -0,0 +1,59 @@
+package info.doula.security.token;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.util.UUID;
+
+/**
+ * Named lease in the oauth_lease table, held by at most one node at a time
+ * The lease expires on its own if the holder stops renewing it.
+ *
+ * @author hossaindoula
+ */
+public class DatabaseLease {
+
+    public static final String DDL = "create table if not exists oauth_lease ("
+            + "name varchar(64) primary key, owner varchar(128) not null, expires_at bigint not null)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String name;
+    private final long ttlMillis;
+    private final String owner = ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID();
+
+    public DatabaseLease(JdbcTemplate jdbcTemplate, String name, long ttlMillis) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.name = name;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Take the lease if it is free or expired, or extend it if this node already holds it
+     *
+     * @return true if this node holds the lease
+     */
+    public boolean tryAcquire() {
+        long now = System.currentTimeMillis();
+        int updated = jdbcTemplate.update(
+                "update oauth_lease set owner = ?, expires_at = ? where name = ? and (owner = ? or expires_at < ?)",
+                owner, now + ttlMillis, name, owner, now);
+        if (updated > 0) return true;
+
+        try {
+            return jdbcTemplate.update("insert into oauth_lease (name, owner, expires_at) values (?, ?, ?)",
+                    name, owner, now + ttlMillis) > 0;
+        } catch (DataIntegrityViolationException e) {
+            // held by another node
+            return false;
+        }
+    }
+
+    public void release() {
+        jdbcTemplate.update("update oauth_lease set expires_at = 0 where name = ? and owner = ?", name, owner);
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+}
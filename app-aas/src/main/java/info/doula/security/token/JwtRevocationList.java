@@ -0,0 +1,57 @@
+package info.doula.security.token;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory list of revoked JWT ids
+ * An id is kept only until its token would have expired anyway, so the list stays small.
+ *
+ * @author hossaindoula
+ */
+public class JwtRevocationList {
+
+    private static final int PURGE_INTERVAL = 64;
+
+    private final ConcurrentMap<String, Long> revoked = new ConcurrentHashMap<>();
+    private final AtomicInteger revocations = new AtomicInteger();
+
+    /**
+     * Revoke a token
+     *
+     * @param jti token id
+     * @param expiresAt expiry of the token in milliseconds, Long.MAX_VALUE if it never expires
+     */
+    public void revoke(String jti, long expiresAt) {
+        if (jti == null || expiresAt <= System.currentTimeMillis()) return;
+        revoked.put(jti, expiresAt);
+        if (revocations.incrementAndGet() % PURGE_INTERVAL == 0) {
+            purge();
+        }
+    }
+
+    /**
+     * @param jti token id
+     * @return true if the token was revoked
+     */
+    public boolean isRevoked(String jti) {
+        if (jti == null || revoked.isEmpty()) return false;
+        Long expiresAt = revoked.get(jti);
+        if (expiresAt == null) return false;
+        if (expiresAt <= System.currentTimeMillis()) {
+            revoked.remove(jti, expiresAt);
+        }
+        // an expired token is rejected anyway
+        return true;
+    }
+
+    public int size() {
+        return revoked.size();
+    }
+
+    private void purge() {
+        long now = System.currentTimeMillis();
+        revoked.values().removeIf(expiresAt -> expiresAt <= now);
+    }
+}
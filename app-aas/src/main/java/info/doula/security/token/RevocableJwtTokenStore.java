@@ -0,0 +1,111 @@
+package info.doula.security.token;
+
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.store.JwtTokenStore;
+
+import java.util.Map;
+
+import static org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter.ACCESS_TOKEN_ID;
+import static org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter.EXP;
+import static org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter.TOKEN_ID;
+
+/**
+ * JWT token store which checks the revocation list before accepting a token
+ * Reading a token verifies its signature once and never touches the database,
+ * removing a token puts its id on the revocation list until it expires.
+ *
+ * @author hossaindoula
+ */
+public class RevocableJwtTokenStore extends JwtTokenStore {
+
+    private final RotatingJwtAccessTokenConverter converter;
+    private final JwtRevocationList revocationList;
+
+    public RevocableJwtTokenStore(RotatingJwtAccessTokenConverter converter, JwtRevocationList revocationList) {
+        super(converter);
+        this.converter = converter;
+        this.revocationList = revocationList;
+    }
+
+    @Override
+    public OAuth2Authentication readAuthentication(OAuth2AccessToken token) {
+        if (revocationList.isRevoked((String) token.getAdditionalInformation().get(TOKEN_ID))) {
+            return null;
+        }
+        return super.readAuthentication(token);
+    }
+
+    @Override
+    public OAuth2Authentication readAuthentication(String token) {
+        Map<String, Object> claims = claims(token);
+        return claims == null ? null : converter.extractAuthentication(claims);
+    }
+
+    @Override
+    public OAuth2AccessToken readAccessToken(String tokenValue) {
+        Map<String, Object> claims = claims(tokenValue);
+        if (claims == null) return null;
+
+        OAuth2AccessToken accessToken = converter.extractAccessToken(tokenValue, claims);
+        if (accessToken.getAdditionalInformation().containsKey(ACCESS_TOKEN_ID)) {
+            throw new InvalidTokenException("Encoded token is a refresh token");
+        }
+        return accessToken;
+    }
+
+    @Override
+    public OAuth2RefreshToken readRefreshToken(String tokenValue) {
+        return claims(tokenValue) == null ? null : super.readRefreshToken(tokenValue);
+    }
+
+    @Override
+    public void removeAccessToken(OAuth2AccessToken token) {
+        revocationList.revoke((String) token.getAdditionalInformation().get(TOKEN_ID),
+                token.getExpiration() == null ? Long.MAX_VALUE : token.getExpiration().getTime());
+    }
+
+    @Override
+    public void removeRefreshToken(OAuth2RefreshToken token) {
+        Map<String, Object> claims = claimsOrNull(token.getValue());
+        if (claims != null) {
+            revocationList.revoke((String) claims.get(TOKEN_ID), expiresAt(claims));
+        }
+    }
+
+    @Override
+    public void removeAccessTokenUsingRefreshToken(OAuth2RefreshToken refreshToken) {
+        Map<String, Object> claims = claimsOrNull(refreshToken.getValue());
+        if (claims != null) {
+            // the access token cannot outlive its refresh token
+            revocationList.revoke((String) claims.get(ACCESS_TOKEN_ID), expiresAt(claims));
+        }
+    }
+
+    public JwtRevocationList getRevocationList() {
+        return revocationList;
+    }
+
+    /**
+     * @return the verified claims, null if the token was revoked
+     */
+    private Map<String, Object> claims(String token) {
+        Map<String, Object> claims = converter.claims(token);
+        return revocationList.isRevoked((String) claims.get(TOKEN_ID)) ? null : claims;
+    }
+
+    private Map<String, Object> claimsOrNull(String token) {
+        try {
+            return converter.claims(token);
+        } catch (InvalidTokenException e) {
+            return null;
+        }
+    }
+
+    private static long expiresAt(Map<String, Object> claims) {
+        Object exp = claims.get(EXP);
+        return exp instanceof Number ? ((Number) exp).longValue() * 1000L : Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,109 @@
+package info.doula.security.token;
+
+import org.springframework.security.jwt.Jwt;
+import org.springframework.security.jwt.JwtHelper;
+import org.springframework.security.jwt.crypto.sign.InvalidSignatureException;
+import org.springframework.security.jwt.crypto.sign.MacSigner;
+import org.springframework.security.jwt.crypto.sign.RsaVerifier;
+import org.springframework.security.jwt.crypto.sign.SignatureVerifier;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.common.util.JsonParser;
+import org.springframework.security.oauth2.common.util.JsonParserFactory;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JWT converter which signs with the current key and still accepts tokens signed with previous keys
+ * The signer and verifiers are built once from the configured keys, verification never leaves the process.
+ * A key starting with "-----BEGIN" is taken as RSA (private key to sign, public key to verify),
+ * any other value as HMAC secret. An RSA signing key needs its public key as verifier key,
+ * the previous keys are then public keys too.
+ *
+ * @author hossaindoula
+ */
+public class RotatingJwtAccessTokenConverter extends JwtAccessTokenConverter {
+
+    private final JsonParser jsonParser = JsonParserFactory.create();
+    private final List<SignatureVerifier> previousVerifiers;
+
+    /**
+     * Constructor
+     *
+     * @param signingKey key used to sign new tokens
+     * @param verifierKey public key of an RSA signing key, null or empty for an HMAC secret
+     * @param previousKeys keys of tokens issued before the last rotation, verification only
+     */
+    public RotatingJwtAccessTokenConverter(String signingKey, String verifierKey, List<String> previousKeys) {
+        setSigningKey(signingKey);
+        if (isRsa(signingKey)) {
+            // without it the parent keeps verifying with its random MAC key and no current token verifies
+            if (verifierKey == null || !isRsa(verifierKey.trim())) {
+                throw new IllegalArgumentException("security.token.jwt.verifier-key must be the RSA public key "
+                        + "of the RSA signing key");
+            }
+            setVerifierKey(verifierKey.trim());
+        }
+        List<SignatureVerifier> verifiers = new ArrayList<>(previousKeys.size());
+        for (String key : previousKeys) {
+            verifiers.add(verifier(key.trim()));
+        }
+        this.previousVerifiers = Collections.unmodifiableList(verifiers);
+    }
+
+    /**
+     * Verify the token and return its claims
+     *
+     * @param token encoded token
+     * @return claims
+     * @throws InvalidTokenException if no key verifies the signature
+     */
+    public Map<String, Object> claims(String token) {
+        return decode(token);
+    }
+
+    @Override
+    protected Map<String, Object> decode(String token) {
+        try {
+            return super.decode(token);
+        } catch (InvalidTokenException e) {
+            if (previousVerifiers.isEmpty()) throw e;
+
+            Jwt jwt;
+            try {
+                jwt = JwtHelper.decode(token);
+            } catch (RuntimeException malformed) {
+                throw e;
+            }
+            for (SignatureVerifier verifier : previousVerifiers) {
+                try {
+                    jwt.verifySignature(verifier);
+                } catch (InvalidSignatureException ignored) {
+                    continue;
+                }
+                return parse(jwt.getClaims());
+            }
+            throw e;
+        }
+    }
+
+    private Map<String, Object> parse(String content) {
+        Map<String, Object> map = jsonParser.parseMap(content);
+        Object exp = map.get(EXP);
+        if (exp instanceof Integer) {
+            map.put(EXP, ((Integer) exp).longValue());
+        }
+        return map;
+    }
+
+    private static SignatureVerifier verifier(String key) {
+        return isRsa(key) ? new RsaVerifier(key) : new MacSigner(key);
+    }
+
+    private static boolean isRsa(String key) {
+        return key.startsWith("-----BEGIN");
+    }
+}
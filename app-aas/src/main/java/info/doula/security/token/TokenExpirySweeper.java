@@ -0,0 +1,157 @@
+package info.doula.security.token;
+
+import com.google.common.util.concurrent.RateLimiter;
+import info.doula.system.MetricsReporter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.common.util.SerializationUtils;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Deletes expired tokens from the JDBC token store tables
+ * The expiry is only stored inside the serialized token, so the tables are walked in token_id order,
+ * one bounded batch at a time and at most tokenstore.sweeper.batches-per-second batches per second.
+ * Only the node holding the "token-sweeper" lease sweeps.
+ *
+ * @author hossaindoula
+ */
+@Component
+public class TokenExpirySweeper implements MetricsReporter {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DatabaseLease lease;
+    private final RateLimiter rateLimiter;
+
+    @Value("${tokenstore.sweeper.enabled:true}")
+    private boolean enabled;
+
+    @Value("${tokenstore.sweeper.batch-size:500}")
+    private int batchSize;
+
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong removedAccessTokens = new AtomicLong();
+    private final AtomicLong removedRefreshTokens = new AtomicLong();
+    private volatile long lastRemoved;
+    private volatile long lastDurationMillis;
+
+    @Autowired
+    public TokenExpirySweeper(DataSource dataSource,
+                              @Value("${tokenstore.sweeper.lease:600}") long leaseSeconds,
+                              @Value("${tokenstore.sweeper.batches-per-second:2}") double batchesPerSecond) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.lease = new DatabaseLease(jdbcTemplate, "token-sweeper", leaseSeconds * 1000L);
+        this.rateLimiter = RateLimiter.create(batchesPerSecond);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) return;
+        try {
+            jdbcTemplate.execute(DatabaseLease.DDL);
+        } catch (RuntimeException e) {
+            logger.warn("Could not create the lease table, the token sweeper is disabled", e);
+            enabled = false;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${tokenstore.sweeper.interval:300000}",
+            initialDelayString = "${tokenstore.sweeper.initial-delay:60000}")
+    public void sweep() {
+        if (!enabled || !lease.tryAcquire()) return;
+
+        long start = System.currentTimeMillis();
+        try {
+            long access = sweep("oauth_access_token",
+                    bytes -> SerializationUtils.<OAuth2AccessToken>deserialize(bytes).isExpired());
+            long refresh = sweep("oauth_refresh_token", bytes -> {
+                OAuth2RefreshToken token = SerializationUtils.deserialize(bytes);
+                return token instanceof ExpiringOAuth2RefreshToken
+                        && ((ExpiringOAuth2RefreshToken) token).getExpiration().getTime() < System.currentTimeMillis();
+            });
+
+            runs.incrementAndGet();
+            removedAccessTokens.addAndGet(access);
+            removedRefreshTokens.addAndGet(refresh);
+            lastRemoved = access + refresh;
+            lastDurationMillis = System.currentTimeMillis() - start;
+            logger.info("token sweeper removed {} access and {} refresh tokens in {} ms",
+                    access, refresh, lastDurationMillis);
+        } catch (RuntimeException e) {
+            logger.error("Error occured in token sweeper", e);
+        } finally {
+            lease.release();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "tokenSweeper";
+    }
+
+    @Override
+    public Map<String, Object> report() {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("enabled", enabled);
+        report.put("runs", runs.get());
+        report.put("removedAccessTokens", removedAccessTokens.get());
+        report.put("removedRefreshTokens", removedRefreshTokens.get());
+        report.put("lastRemoved", lastRemoved);
+        report.put("lastDurationMillis", lastDurationMillis);
+        return report;
+    }
+
+    /**
+     * Walk the table in batches and delete the expired rows of each batch
+     *
+     * @return number of deleted rows
+     */
+    private long sweep(String table, Predicate<byte[]> expired) {
+        String select = "select token_id, token from " + table + " where token_id > ? order by token_id limit ?";
+        String after = "";
+        long removed = 0;
+
+        while (true) {
+            rateLimiter.acquire();
+            List<String> expiredKeys = new ArrayList<>();
+            List<String> keys = new ArrayList<>(batchSize);
+            jdbcTemplate.query(select, new Object[]{after, batchSize}, (RowCallbackHandler) rs -> {
+                String key = rs.getString(1);
+                keys.add(key);
+                try {
+                    if (expired.test(rs.getBytes(2))) expiredKeys.add(key);
+                } catch (IllegalArgumentException e) {
+                    // not readable by this version, left to JdbcTokenStore
+                }
+            });
+
+            if (!expiredKeys.isEmpty()) {
+                removed += jdbcTemplate.update("delete from " + table + " where token_id in ("
+                        + String.join(",", Collections.nCopies(expiredKeys.size(), "?")) + ")", expiredKeys.toArray());
+            }
+            if (keys.size() < batchSize || !lease.tryAcquire()) {
+                return removed;
+            }
+            after = keys.get(keys.size() - 1);
+        }
+    }
+}
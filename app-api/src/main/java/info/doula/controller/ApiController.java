@@ -6,8 +6,10 @@ import info.doula.exception.NotFoundException;
 import info.doula.exception.ServiceConditionException;
 import info.doula.exception.SystemException;
 import info.doula.response.Http;
+import info.doula.response.StreamingResponse;
 import info.doula.service.ApiExecuteService;
 import info.doula.system.ResponseLogger;
+import info.doula.util.GzipCodec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -16,6 +18,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
@@ -39,6 +42,7 @@ public class ApiController extends BaseComponent {
      * Used for all the Version API's
      *
      * @param servletRequest - servlet request
+     * @param servletResponse - servlet response, used for streaming responses
      * @param serviceName    - module name/ action class bean name
      * @param versionNumber  - version number for the corresponding API
      * @return response format
@@ -48,6 +52,7 @@ public class ApiController extends BaseComponent {
                     method = RequestMethod.POST)
     @ResponseStatus(HttpStatus.OK)
     public ResponseEntity<Object> executeVersionApiWithPost(HttpServletRequest servletRequest,
+                                                    HttpServletResponse servletResponse,
                                                     @PathVariable("service") String serviceName,
                                                     @PathVariable("operation") String operationName,
                                                     @PathVariable("version") String versionNumber)
@@ -57,13 +62,14 @@ public class ApiController extends BaseComponent {
             ServiceConditionException, IOException {
         Map<String, Object> response = execute(servletRequest, serviceName, operationName);
 
-        return new ResponseEntity<>(response, HttpStatus.OK);
+        return respond(servletRequest, servletResponse, response);
     }
 
     /**
      * Used for all the Version API's
      *
      * @param servletRequest - servlet request
+     * @param servletResponse - servlet response, used for streaming responses
      * @param serviceName    - module name/ action class bean name
      * @return response format
      */
@@ -72,12 +78,13 @@ public class ApiController extends BaseComponent {
                     method = RequestMethod.POST)
     @ResponseStatus(HttpStatus.OK)
     public ResponseEntity<Object> executePassThroughApiWithPost(HttpServletRequest servletRequest,
+                                                    HttpServletResponse servletResponse,
                                                     @PathVariable("service") String serviceName,
                                                     @PathVariable("operation") String operationName)
             throws BadRequestException, NotFoundException, SystemException, ServiceConditionException, IOException {
         Map<String, Object> response = execute(servletRequest, serviceName, operationName);
 
-        return new ResponseEntity<>(response, HttpStatus.OK);
+        return respond(servletRequest, servletResponse, response);
     }
     /************************ POST *********************************/
 
@@ -86,6 +93,7 @@ public class ApiController extends BaseComponent {
      * Used for all the Version API's
      *
      * @param servletRequest - servlet request
+     * @param servletResponse - servlet response, used for streaming responses
      * @param serviceName    - module name/ action class bean name
      * @param versionNumber  - version number for the corresponding API
      * @return response format
@@ -95,19 +103,21 @@ public class ApiController extends BaseComponent {
                     method = RequestMethod.GET)
     @ResponseStatus(HttpStatus.OK)
     public ResponseEntity<Object> executeVersionApiWithGet(HttpServletRequest servletRequest,
+                                                    HttpServletResponse servletResponse,
                                                     @PathVariable("service") String serviceName,
                                                     @PathVariable("operation") String operationName,
                                                     @PathVariable("version") String versionNumber)
             throws BadRequestException, NotFoundException, SystemException, ServiceConditionException, IOException {
         Map<String, Object> response = execute(servletRequest, serviceName, operationName);
 
-        return new ResponseEntity<>(response, HttpStatus.OK);
+        return respond(servletRequest, servletResponse, response);
     }
 
     /**
      * Used for all the Version API's
      *
      * @param servletRequest - servlet request
+     * @param servletResponse - servlet response, used for streaming responses
      * @param serviceName    - module name/ action class bean name
      * @return response format
      */
@@ -116,12 +126,13 @@ public class ApiController extends BaseComponent {
                     method = RequestMethod.GET)
     @ResponseStatus(HttpStatus.OK)
     public ResponseEntity<Object> executePassThroughApiWithGet(HttpServletRequest servletRequest,
+                                                    HttpServletResponse servletResponse,
                                                     @PathVariable("service") String serviceName,
                                                     @PathVariable("operation") String operationName)
             throws BadRequestException, NotFoundException, SystemException, ServiceConditionException, IOException {
         Map<String, Object> response = execute(servletRequest, serviceName, operationName);
 
-        return new ResponseEntity<>(response, HttpStatus.OK);
+        return respond(servletRequest, servletResponse, response);
     }
     /************************ GET *********************************/
 
@@ -130,6 +141,7 @@ public class ApiController extends BaseComponent {
      * Used for all the Version API's
      *
      * @param servletRequest - servlet request
+     * @param servletResponse - servlet response, used for streaming responses
      * @param serviceName    - module name/ action class bean name
      * @param versionNumber  - version number for the corresponding API
      * @return response format
@@ -139,19 +151,21 @@ public class ApiController extends BaseComponent {
                     method = RequestMethod.PUT)
     @ResponseStatus(HttpStatus.OK)
     public ResponseEntity<Object> executeVersionApiWithPut(HttpServletRequest servletRequest,
+                                                    HttpServletResponse servletResponse,
                                                     @PathVariable("service") String serviceName,
                                                     @PathVariable("operation") String operationName,
                                                     @PathVariable("version") String versionNumber)
             throws BadRequestException, NotFoundException, SystemException, ServiceConditionException, IOException {
         Map<String, Object> response = execute(servletRequest, serviceName, operationName);
 
-        return new ResponseEntity<>(response, HttpStatus.OK);
+        return respond(servletRequest, servletResponse, response);
     }
 
     /**
      * Used for all the Version API's
      *
      * @param servletRequest - servlet request
+     * @param servletResponse - servlet response, used for streaming responses
      * @param serviceName    - module name/ action class bean name
      * @return response format
      */
@@ -160,6 +174,7 @@ public class ApiController extends BaseComponent {
                     method = RequestMethod.PUT)
     @ResponseStatus(HttpStatus.OK)
     public ResponseEntity<Object> executePassThroughApiWithPut(HttpServletRequest servletRequest,
+                                                    HttpServletResponse servletResponse,
                                                     @PathVariable("service") String serviceName,
                                                     @PathVariable("operation") String operationName)
             throws BadRequestException, NotFoundException, SystemException, ServiceConditionException, IOException {
@@ -167,7 +182,7 @@ public class ApiController extends BaseComponent {
 
         Map<String, Object> response = execute(servletRequest, serviceName, operationName);
 
-        return new ResponseEntity<>(response, HttpStatus.OK);
+        return respond(servletRequest, servletResponse, response);
     }
 
     /************************ PUT *********************************/
@@ -177,6 +192,7 @@ public class ApiController extends BaseComponent {
      * Used for all the Version API's
      *
      * @param servletRequest - servlet request
+     * @param servletResponse - servlet response, used for streaming responses
      * @param serviceName    - module name/ action class bean name
      * @param versionNumber  - version number for the corresponding API
      * @return response format
@@ -186,19 +202,21 @@ public class ApiController extends BaseComponent {
                     method = RequestMethod.PUT)
     @ResponseStatus(HttpStatus.OK)
     public ResponseEntity<Object> executeVersionApiWithPatch(HttpServletRequest servletRequest,
+                                                    HttpServletResponse servletResponse,
                                                     @PathVariable("service") String serviceName,
                                                     @PathVariable("operation") String operationName,
                                                     @PathVariable("version") String versionNumber)
             throws BadRequestException, NotFoundException, SystemException, ServiceConditionException, IOException {
         Map<String, Object> response = execute(servletRequest, serviceName, operationName);
 
-        return new ResponseEntity<>(response, HttpStatus.OK);
+        return respond(servletRequest, servletResponse, response);
     }
 
     /**
      * Used for all the Version API's
      *
      * @param servletRequest - servlet request
+     * @param servletResponse - servlet response, used for streaming responses
      * @param serviceName    - module name/ action class bean name
      * @return response format
      */
@@ -207,12 +225,13 @@ public class ApiController extends BaseComponent {
                     method = RequestMethod.PUT)
     @ResponseStatus(HttpStatus.OK)
     public ResponseEntity<Object> executePassThroughApiWithPatch(HttpServletRequest servletRequest,
+                                                    HttpServletResponse servletResponse,
                                                     @PathVariable("service") String serviceName,
                                                     @PathVariable("operation") String operationName)
             throws BadRequestException, NotFoundException, SystemException, ServiceConditionException, IOException {
         Map<String, Object> response = execute(servletRequest, serviceName, operationName);
 
-        return new ResponseEntity<>(response, HttpStatus.OK);
+        return respond(servletRequest, servletResponse, response);
     }
 
     /************************ PATCH *********************************/
@@ -222,6 +241,7 @@ public class ApiController extends BaseComponent {
      * Used for all the Version API's
      *
      * @param servletRequest - servlet request
+     * @param servletResponse - servlet response, used for streaming responses
      * @param serviceName    - module name/ action class bean name
      * @param versionNumber  - version number for the corresponding API
      * @return response format
@@ -231,19 +251,21 @@ public class ApiController extends BaseComponent {
                     method = RequestMethod.DELETE)
     @ResponseStatus(HttpStatus.OK)
     public ResponseEntity<Object> executeVersionApiWithDelete(HttpServletRequest servletRequest,
+                                                    HttpServletResponse servletResponse,
                                                     @PathVariable("service") String serviceName,
                                                     @PathVariable("operation") String operationName,
                                                     @PathVariable("version") String versionNumber)
             throws BadRequestException, NotFoundException, SystemException, ServiceConditionException, IOException {
         Map<String, Object> response = execute(servletRequest, serviceName, operationName);
 
-        return new ResponseEntity<>(response, HttpStatus.OK);
+        return respond(servletRequest, servletResponse, response);
     }
 
     /**
      * Used for all the Version API's
      *
      * @param servletRequest - servlet request
+     * @param servletResponse - servlet response, used for streaming responses
      * @param serviceName    - module name/ action class bean name
      * @return response format
      */
@@ -252,16 +274,45 @@ public class ApiController extends BaseComponent {
                     method = RequestMethod.DELETE)
     @ResponseStatus(HttpStatus.OK)
     public ResponseEntity<Object> executePassThroughApiWithDelete(HttpServletRequest servletRequest,
+                                                    HttpServletResponse servletResponse,
                                                     @PathVariable("service") String serviceName,
                                                     @PathVariable("operation") String operationName)
             throws BadRequestException, NotFoundException, SystemException, ServiceConditionException, IOException{
         Map<String, Object> response = execute(servletRequest, serviceName, operationName);
 
-        return new ResponseEntity<>(response, HttpStatus.OK);
+        return respond(servletRequest, servletResponse, response);
     }
 
     /************************ DELETE *********************************/
 
+    /**
+     * Build the response entity
+     * If the business logic returned a streaming response, the body is copied straight to the
+     * servlet output stream and null is returned so Spring does not write anything else
+     *
+     * @param servletRequest - servlet request
+     * @param servletResponse - servlet response
+     * @param response - response map of the business logic
+     * @return response entity, null if the response was streamed
+     */
+    private ResponseEntity<Object> respond(HttpServletRequest servletRequest, HttpServletResponse servletResponse,
+                                           Map<String, Object> response) throws IOException {
+        Object streamingResponse = servletRequest.getAttribute(StreamingResponse.ATTRIBUTE);
+        if (!(streamingResponse instanceof StreamingResponse)) {
+            return new ResponseEntity<>(response, HttpStatus.OK);
+        }
+
+        StreamingResponse streaming = (StreamingResponse) streamingResponse;
+        // same q-value aware check as the CompressionFilter
+        boolean gzipAccepted = GzipCodec.isAccepted(servletRequest.getHeader("Accept-Encoding"));
+
+        servletResponse.setStatus(HttpStatus.OK.value());
+        if (streaming.getContentType() != null) servletResponse.setContentType(streaming.getContentType());
+        if (streaming.isGzipPassThrough(gzipAccepted)) servletResponse.setHeader("Content-Encoding", "gzip");
+        streaming.writeTo(servletResponse.getOutputStream(), gzipAccepted);
+        return null;
+    }
+
     private Map<String, Object> execute(HttpServletRequest httpServletRequest, String serviceName, String operationName)
             throws BadRequestException, NotFoundException, SystemException, ServiceConditionException, IOException {
         checkContentType(httpServletRequest);
@@ -2,10 +2,13 @@ package info.doula.controller;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import info.doula.service.ConfigurationService;
+import info.doula.system.MetricsReporter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Controller;
@@ -23,6 +26,9 @@ public class PlatformController {
     @Autowired
     ConfigurationService configurationService;
 
+    @Autowired(required = false)
+    List<MetricsReporter> metricsReporters = Collections.emptyList();
+
     @Value(value = "${dynamic.properties.reload.access_key}")
     private String platformControlledAccessKey;
 
@@ -89,4 +95,24 @@ public class PlatformController {
 
         return "json";
     }
+
+    @RequestMapping(value = "api/management/metrics")
+    public String metrics(Model model,
+                          @RequestParam("access_key") String accessKey) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        if(platformControlledAccessKey.equals(accessKey)) {
+            for (MetricsReporter metricsReporter : metricsReporters) {
+                response.put(metricsReporter.getName(), metricsReporter.report());
+            }
+            model.addAttribute("responseData", response);
+            model.addAttribute("responseStatus", 200);
+        } else {
+            response.put("error", "wrong_parameter");
+            response.put("error_description", "invalid access_key");
+            model.addAttribute("responseData", response);
+            model.addAttribute("responseStatus", 400);
+        }
+
+        return "json";
+    }
 }
@@ -0,0 +1,196 @@
+package info.doula.interceptor;
+
+import info.doula.util.GzipCodec;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+/**
+ * Response wrapper which holds back the first threshold bytes of the body
+ * If the body stays under the threshold it is written uncompressed with its length,
+ * otherwise the response switches to gzip and the rest is compressed while it is written.
+ *
+ * @author hossaindoula
+ */
+class CompressingResponseWrapper extends HttpServletResponseWrapper {
+
+    private static final String CONTENT_ENCODING = "Content-Encoding";
+    private static final String CONTENT_LENGTH = "Content-Length";
+
+    private final int threshold;
+    private final String[] mimeTypes;
+
+    private ThresholdOutputStream stream;
+    private PrintWriter writer;
+    private boolean encoded = false;
+
+    CompressingResponseWrapper(HttpServletResponse response, int threshold, String[] mimeTypes) {
+        super(response);
+        this.threshold = threshold;
+        this.mimeTypes = mimeTypes;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (writer != null) throw new IllegalStateException("getWriter() has already been called");
+        if (stream == null) stream = new ThresholdOutputStream();
+        return stream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer != null) return writer;
+        if (stream != null) throw new IllegalStateException("getOutputStream() has already been called");
+        stream = new ThresholdOutputStream();
+        writer = new PrintWriter(new OutputStreamWriter(stream, getCharacterEncoding()));
+        return writer;
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        if (!interceptHeader(name, value)) super.setHeader(name, value);
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        if (!interceptHeader(name, value)) super.addHeader(name, value);
+    }
+
+    @Override
+    public void setContentLength(int len) {
+        if (encoded) super.setContentLength(len);
+    }
+
+    @Override
+    public void setContentLengthLong(long len) {
+        if (encoded) super.setContentLengthLong(len);
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (writer != null) writer.flush();
+        // holding back the buffered bytes until the compression is decided
+        if (stream == null || stream.target != null) super.flushBuffer();
+    }
+
+    /**
+     * Write what is still held back and finish the gzip stream
+     */
+    void finish() throws IOException {
+        if (writer != null) writer.flush();
+        if (stream != null) stream.finish();
+    }
+
+    /**
+     * Give the deflater back without finishing the body, for a chain which failed
+     */
+    void release() {
+        if (stream != null) stream.release();
+    }
+
+    /**
+     * The body length is decided by the wrapper, an already encoded body is passed through
+     *
+     * @return true if the header must not be set on the response yet
+     */
+    private boolean interceptHeader(String name, String value) {
+        if (CONTENT_ENCODING.equalsIgnoreCase(name)) {
+            encoded = true;
+            return false;
+        }
+        return CONTENT_LENGTH.equalsIgnoreCase(name) && !encoded;
+    }
+
+    private boolean isCompressible() {
+        if (encoded) return false;
+        String contentType = getContentType();
+        if (contentType == null) return false;
+        for (String mimeType : mimeTypes) {
+            if (contentType.startsWith(mimeType)) return true;
+        }
+        return false;
+    }
+
+    private class ThresholdOutputStream extends ServletOutputStream {
+
+        private byte[] buffer;
+        private int count = 0;
+        private OutputStream target;
+        private GzipCodec.GzipStream gzip;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (target == null) {
+                if (!encoded && count + len <= threshold) {
+                    if (buffer == null) buffer = new byte[threshold];
+                    System.arraycopy(b, off, buffer, count, len);
+                    count += len;
+                    return;
+                }
+                open();
+            }
+            target.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (target != null) target.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            throw new UnsupportedOperationException("non blocking write is not supported");
+        }
+
+        void finish() throws IOException {
+            if (target == null) {
+                // small body, written uncompressed with its length
+                if (!encoded) CompressingResponseWrapper.super.setContentLength(count);
+                target = CompressingResponseWrapper.super.getOutputStream();
+                if (count > 0) target.write(buffer, 0, count);
+            } else if (gzip != null) {
+                gzip.close();
+            }
+            target.flush();
+        }
+
+        void release() {
+            // no trailer, a broken body must not decode as a complete one
+            if (gzip != null) gzip.release();
+        }
+
+        private void open() throws IOException {
+            OutputStream out = CompressingResponseWrapper.super.getOutputStream();
+            if (isCompressible()) {
+                CompressingResponseWrapper.super.setHeader(CONTENT_ENCODING, "gzip");
+                CompressingResponseWrapper.super.addHeader("Vary", "Accept-Encoding");
+                gzip = GzipCodec.newOutputStream(out);
+                target = gzip;
+            } else {
+                target = out;
+            }
+            if (count > 0) target.write(buffer, 0, count);
+        }
+    }
+}
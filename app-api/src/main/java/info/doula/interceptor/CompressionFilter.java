@@ -0,0 +1,107 @@
+package info.doula.interceptor;
+
+import info.doula.system.impl.AppConf;
+import info.doula.system.impl.AppConfReader;
+import info.doula.util.GzipCodec;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Gzip compression of the API responses
+ * Bodies under response.compression.threshold bytes and non-textual content types are sent as they are,
+ * bodies which are already encoded (e.g. gzip pass-through of a streaming response) are never touched.
+ * An async response (e.g. StreamingResponseBody) is finished when the async request completes, and the
+ * deflater is given back when the chain fails.
+ *
+ * @author hossaindoula
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class CompressionFilter implements Filter {
+
+    private boolean enabled;
+    private int threshold;
+    private String[] mimeTypes;
+
+    @Override
+    public void init(FilterConfig config) throws ServletException {
+        AppConfReader conf = AppConf.getInstance();
+        enabled = conf.getBoolean("response.compression.enabled", true);
+        threshold = conf.getInt("response.compression.threshold", 1024);
+        mimeTypes = conf.getString("response.compression.mimeTypes", "application/json,application/xml,text/")
+                .split("\\s*,\\s*");
+    }
+
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain) throws IOException, ServletException {
+        if (!enabled || !GzipCodec.isAccepted(((HttpServletRequest) req).getHeader("Accept-Encoding"))) {
+            chain.doFilter(req, res);
+            return;
+        }
+
+        CompressingResponseWrapper response =
+                new CompressingResponseWrapper((HttpServletResponse) res, threshold, mimeTypes);
+        boolean completed = false;
+        try {
+            chain.doFilter(req, response);
+            completed = true;
+        } finally {
+            if (!completed) {
+                response.release();
+            } else if (req.isAsyncStarted()) {
+                req.getAsyncContext().addListener(new FinishListener(response));
+            } else {
+                try {
+                    response.finish();
+                } finally {
+                    response.release();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    /**
+     * Finishes the body once the async processing has written all of it
+     */
+    private static class FinishListener implements AsyncListener {
+
+        private final CompressingResponseWrapper response;
+
+        FinishListener(CompressingResponseWrapper response) {
+            this.response = response;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) throws IOException {
+            try {
+                response.finish();
+            } finally {
+                response.release();
+            }
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // the listener is dropped on a new startAsync, stay registered
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
@@ -60,6 +60,11 @@ public class JsonAttributes {
 	public static final String TYPE_LONG_ARRAY = "longarray";
 	public static final String TYPE_STRING_ARRAY = "stringarray";
 	public static final String MAX_SIZE = "maxSize";
+
+	public static final String MAX_DEPTH = "maxDepth";
+	public static final String MAX_ELEMENTS = "maxElements";
+	public static final String MAX_STRING_BYTES = "maxStringBytes";
+	public static final String MAX_ARRAY_SIZE = "maxArraySize";
 	
 	public static final String TYPE_OBJECT = "object";
 	public static final String TYPE_OBJECT_ARRAY = "objectarray";
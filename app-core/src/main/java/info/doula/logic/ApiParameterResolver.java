@@ -1,6 +1,7 @@
 package info.doula.logic;
 
 import info.doula.exception.ParameterResolveException;
+import info.doula.response.ResponseTemplate;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -45,4 +46,18 @@ public interface ApiParameterResolver {
 	LinkedHashMap<String, ?> resolveResponseParameter(Map<String, Object> actualResponse, Map<String, Object> responseTemplateMap)
 			throws ParameterResolveException;
 
+	/**
+	 * Response template compiled into a serializer
+	 *
+	 * Projects the actual response like resolveResponseParameter but writes it as JSON straight to the client,
+	 * return template.stream(actualResponse) from the operation instead of the resolved map,
+	 * stream validates the response before anything is written.
+	 * Templates are compiled once per json configuration.
+	 *
+	 * @param responseTemplateMap
+	 * @return compiled template
+	 */
+	ResponseTemplate compileResponseParameter(Map<String, Object> responseTemplateMap)
+			throws ParameterResolveException;
+
 }
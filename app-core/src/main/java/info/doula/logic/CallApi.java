@@ -1,6 +1,7 @@
 package info.doula.logic;
 
 import info.doula.exception.ServiceConditionException;
+import info.doula.response.StreamingResponse;
 
 import java.io.File;
 import java.io.IOException;
@@ -23,6 +24,12 @@ public interface CallApi {
 
 	String requestSynchronousGet(Map<String, ?> connectionMap, Map<String, ?> param) throws ServiceConditionException, IOException;
 
+	/**
+	 * GET whose response body is passed to the client as a stream instead of a String
+	 * connectionMap "gzip" = true keeps a gzip encoded upstream body encoded for pass-through
+	 */
+	StreamingResponse requestStream(Map<String, ?> connectionMap, Map<String, ?> param) throws ServiceConditionException, IOException;
+
 	String requestAsynchronousGet(Map<String, ?> connectionMap, Map<String, ?> param) throws ServiceConditionException, IOException;
 
 	String requestPostBody(Map<String, ?> connectionMap) throws ServiceConditionException, IOException, Exception;
@@ -0,0 +1,28 @@
+package info.doula.logic;
+
+import info.doula.exception.ServiceConditionException;
+
+import java.util.Map;
+
+/**
+ * Fallback hook for outbound API calls
+ * Put an instance into the connectionMap with the key "fallback" and it will be called
+ * when the upstream circuit is open or every attempt has failed
+ *
+ * @author hossaindoula
+ *
+ */
+@FunctionalInterface
+public interface CallApiFallback {
+
+	/**
+	 * Provide the response body to use instead of the upstream response
+	 *
+	 * @param connectionMap - connection information of the failed call
+	 * @param cause - reason of the failure
+	 * @return response body
+	 * @throws ServiceConditionException if no fallback response is possible
+	 */
+	String fallback(Map<String, ?> connectionMap, Throwable cause) throws ServiceConditionException;
+
+}
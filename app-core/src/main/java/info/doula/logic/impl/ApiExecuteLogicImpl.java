@@ -10,6 +10,7 @@ import info.doula.exception.ServiceConditionException;
 import info.doula.exception.SystemException;
 import info.doula.logic.ApiExecuteLogic;
 import info.doula.logic.ApiReflectionLogic;
+import info.doula.response.StreamingResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.BeanFactory;
@@ -71,7 +72,15 @@ public class ApiExecuteLogicImpl implements ApiExecuteLogic, BeanFactoryAware {
 		}
 
 		// Call reflection logic to invoke the main action class of module
-		return (LinkedHashMap<String, ?>)apiReflectionLogic.execute(servletRequest, dataMap, logicObject);
+		Object result = apiReflectionLogic.execute(servletRequest, dataMap, logicObject);
+
+		// Streaming responses are written by the controller straight to the client
+		if (result instanceof StreamingResponse) {
+			servletRequest.setAttribute(StreamingResponse.ATTRIBUTE, result);
+			return null;
+		}
+
+		return (LinkedHashMap<String, ?>) result;
 	}
 
 	@SuppressWarnings("unchecked")
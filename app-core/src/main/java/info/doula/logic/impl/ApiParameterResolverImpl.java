@@ -1,14 +1,23 @@
 package info.doula.logic.impl;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Maps;
 import info.doula.exception.ParameterResolveException;
 import info.doula.logic.ApiParameterResolver;
+import info.doula.response.ResponseTemplate;
+import info.doula.util.OptionSet;
+import info.doula.util.TypeCoercion;
 import org.apache.commons.lang3.StringUtils;
 import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.math.BigDecimal;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.regex.Pattern;
 
 import static info.doula.entity.JsonAttributes.*;
@@ -18,11 +27,60 @@ import static info.doula.util.ObjectUtils.isNullObject;
 
 /**
  * Created by hossaindoula<hossaindoula@gmail.com> on 6/11/2017.
+ *
+ * objectarray elements are resolved on a ForkJoin pool when resolver.parallel.enabled is true and the array
+ * has at least resolver.parallel.threshold elements, smaller arrays stay on the request thread.
+ *
+ * Request resolution is bounded by resolver.budget.* (nesting depth, number of values, string bytes and
+ * array size), a request template can lower them with maxDepth, maxElements, maxStringBytes and maxArraySize.
  */
 @Component("apiParameterResolver")
 public class ApiParameterResolverImpl implements ApiParameterResolver {
 
-    private Pattern pattern;
+    @Value("${resolver.parallel.enabled:false}")
+    private boolean parallelEnabled;
+
+    /** an element costs about 0.25us and a split about 10us, parallel wins from about 100 elements */
+    @Value("${resolver.parallel.threshold:256}")
+    private int parallelThreshold;
+
+    /** 0 for one thread per core */
+    @Value("${resolver.parallel.parallelism:0}")
+    private int parallelism;
+
+    @Value("${resolver.budget.max-depth:16}")
+    private int maxDepth;
+
+    @Value("${resolver.budget.max-elements:100000}")
+    private long maxElements;
+
+    @Value("${resolver.budget.max-string-bytes:10485760}")
+    private long maxStringBytes;
+
+    @Value("${resolver.budget.max-array-size:10000}")
+    private int maxArraySize;
+
+    private ParallelArrayResolver arrayResolver = new ParallelArrayResolver(null, Integer.MAX_VALUE);
+
+    /** compiled response templates, keyed by the identity of the loaded json configuration */
+    private final Cache<Map<String, Object>, ResponseTemplate> responseTemplates =
+            CacheBuilder.newBuilder().weakKeys().build();
+
+    /** compiled option and intoption values, keyed by the identity of the template parameter */
+    private final Cache<Map<?, ?>, OptionSet> optionSets = CacheBuilder.newBuilder().weakKeys().build();
+
+    @PostConstruct
+    public void init() {
+        if (parallelEnabled) {
+            int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+            arrayResolver = new ParallelArrayResolver(new ForkJoinPool(threads), parallelThreshold);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        arrayResolver.shutdown();
+    }
 
     /**
      * Resolve request map
@@ -55,8 +113,10 @@ public class ApiParameterResolverImpl implements ApiParameterResolver {
             throw new ParameterResolveException("invalid request parameters in json configuration file. " +
                     "request parameters should be list");
 
+        ResolutionBudget budget = new ResolutionBudget(maxDepth, maxElements, maxStringBytes, maxArraySize)
+                .forTemplate(requestTemplateMap);
         for(Object templateParameter : templateParameterMap)
-            resolveRequestRecursively(actualRequest, (Map)templateParameter, generatedMap, dataMap);
+            resolveRequestRecursively(actualRequest, (Map)templateParameter, generatedMap, dataMap, budget, 1);
 
         return generatedMap;
 
@@ -68,40 +128,38 @@ public class ApiParameterResolverImpl implements ApiParameterResolver {
      * @param templateData
      * @param generatedRequestMap
      * @param dataMap
+     * @param budget limits of the whole request, charged while resolving
+     * @param depth nesting level of the parameter, 1 for the request parameters
      * @throws ParameterResolveException
      */
     @SuppressWarnings("unchecked")
     private void resolveRequestRecursively(Map<String, Object> requestMap, Map<String, Object> templateData,
-                                           Map<String, Object> generatedRequestMap, Map<String, Object> dataMap)
+                                           Map<String, Object> generatedRequestMap, Map<String, Object> dataMap,
+                                           ResolutionBudget budget, int depth)
                                             throws ParameterResolveException {
         String key = templateData.get(NAME).toString();
         String type = templateData.get(TYPE).toString();
         String source = !isNullObject(templateData.get(SOURCE)) ? templateData.get(SOURCE).toString() : key;
+        budget.value(source, depth);
 
         switch(type) {
             case TYPE_BOOLEAN:
                 Object booleanValue = getParameterValue(templateData, source, requestMap);
-                if(booleanValue != null) {
-                    boolean value = false;
-                    if(booleanValue.toString().toLowerCase().equals("true"))
-                        value = true;
-                    else if (isInteger(booleanValue))
-                        value = toInt(booleanValue.toString()) > 0;
-                    generatedRequestMap.put(key, value);
-                }
+                if(booleanValue != null)
+                    generatedRequestMap.put(key, TypeCoercion.toBoolean(booleanValue));
                 break;
 
             case TYPE_INT:
             case TYPE_INTEGER:
                 Object integerValue = getParameterValue(templateData, source, requestMap);
-                if(isNull(integerValue)) {
+                if(!isNull(integerValue)) {
                     if(!isInteger(integerValue))
                         throw new ParameterResolveException(source + " " + PR_MST_INT);
-                    int givenValue = toInt(integerValue.toString());
+                    int givenValue = toInt(integerValue);
                     Integer maxValue = !isNullObject(templateData.get(MAX_VALUE)) ?
-                            toInt(templateData.get(MAX_VALUE).toString())  : null;
+                            toInt(templateData.get(MAX_VALUE))  : null;
                     Integer minValue = !isNullObject(templateData.get(MIN_VALUE)) ?
-                            toInt(templateData.get(MIN_VALUE).toString()) : null;
+                            toInt(templateData.get(MIN_VALUE)) : null;
                     checkMaxMinValue(maxValue, minValue, source, givenValue);
                     generatedRequestMap.put(key, givenValue);
                 }
@@ -109,12 +167,12 @@ public class ApiParameterResolverImpl implements ApiParameterResolver {
 
             case TYPE_LONG:
                 Object longValue = getParameterValue(templateData, source, requestMap);
-                if(isNull(longValue)) {
+                if(!isNull(longValue)) {
                     if(!isLong(longValue))
                         throw new ParameterResolveException(source + " " + PR_MST_LNG);
-                    long givenValue = toLong(longValue.toString());
-                    Long maxValue = !isNullObject(templateData.get(MAX_VALUE))? toLong(templateData.get(MAX_VALUE).toString()) : null;
-                    Long minValue = !isNullObject(templateData.get(MIN_VALUE))? toLong(templateData.get(MIN_VALUE).toString()) : null;
+                    long givenValue = toLong(longValue);
+                    Long maxValue = !isNullObject(templateData.get(MAX_VALUE))? toLong(templateData.get(MAX_VALUE)) : null;
+                    Long minValue = !isNullObject(templateData.get(MIN_VALUE))? toLong(templateData.get(MIN_VALUE)) : null;
                     checkMaxMinValue(maxValue, minValue, source, givenValue);
                     generatedRequestMap.put(key, givenValue);
                 }
@@ -122,13 +180,13 @@ public class ApiParameterResolverImpl implements ApiParameterResolver {
 
             case TYPE_DECIMAL:
                 Object decimalValue = getParameterValue(templateData, source, requestMap);
-                if(isNull(decimalValue)) {
-                    if(!isBigDecimal(decimalValue.toString()))
+                if(!isNull(decimalValue)) {
+                    BigDecimal givenValue = TypeCoercion.toDecimal(decimalValue);
+                    if(givenValue == null)
                         throw new ParameterResolveException(source + " " + PR_MST_DEC);
                     doValidatePattern(decimalValue, templateData);
-                    BigDecimal givenValue = new BigDecimal(decimalValue.toString());
-                    BigDecimal maxValue = !isNullObject(templateData.get(MAX_VALUE)) ? new BigDecimal(templateData.get(MAX_VALUE).toString()) : null;
-                    BigDecimal minValue = !isNullObject(templateData.get(MIN_VALUE)) ? new BigDecimal(templateData.get(MIN_VALUE).toString()) : null;
+                    BigDecimal maxValue = !isNullObject(templateData.get(MAX_VALUE)) ? TypeCoercion.toDecimal(templateData.get(MAX_VALUE)) : null;
+                    BigDecimal minValue = !isNullObject(templateData.get(MIN_VALUE)) ? TypeCoercion.toDecimal(templateData.get(MIN_VALUE)) : null;
                     checkMaxMinValue(maxValue, minValue, source, givenValue);
                     generatedRequestMap.put(key, givenValue);
                 }
@@ -136,13 +194,10 @@ public class ApiParameterResolverImpl implements ApiParameterResolver {
 
             case TYPE_OPTION:
                 Object optionValue = getParameterValue(templateData, source, requestMap);
-                if(isNullObject(optionValue)) {
-                    List values = (List)templateData.get(OPTION);
-                    if(isNullObject(values))
-                        throw new ParameterResolveException(source + " " + OPT_MST);
-
-                    if(values.stream().anyMatch(ti -> ti != optionValue))
-                        throw new ParameterResolveException("set " + source + " from " + values.add(','));
+                if(!isNullObject(optionValue)) {
+                    OptionSet options = getOptionSet(templateData, source, false);
+                    if(!options.contains(optionValue))
+                        throw new ParameterResolveException(options.getErrorMessage());
 
                     generatedRequestMap.put(key, optionValue);
                 }
@@ -150,23 +205,22 @@ public class ApiParameterResolverImpl implements ApiParameterResolver {
 
             case TYPE_INT_OPTION:
                 Object intOptionValue = getParameterValue(templateData, source, requestMap);
-                if(isNullObject(intOptionValue)) {
+                if(!isNullObject(intOptionValue)) {
                     if(!isInteger(intOptionValue)) throw new ParameterResolveException(source + " " + PR_MST_INT);
 
-                    int givenValue = toInt(intOptionValue.toString());
-                    List<Integer> values = (List<Integer>)templateData.get(OPTION);
-
-                    if(isNullObject(values))
-                        throw new ParameterResolveException(source + " " + OPT_MST);
-                    if(values.stream().anyMatch(ti -> ti != givenValue))
-                        throw new ParameterResolveException("set " + source + " from " + values);
+                    int givenValue = toInt(intOptionValue);
+                    OptionSet options = getOptionSet(templateData, source, true);
+                    if(!options.containsInt(givenValue))
+                        throw new ParameterResolveException(options.getErrorMessage());
                     generatedRequestMap.put(key, givenValue);
                 }
                 break;
 
             case TYPE_STRING:
-                String stringValue = getParameterValue(templateData, source, requestMap).toString();
-                if(!isNullObject(stringValue)) {
+                Object stringParameter = getParameterValue(templateData, source, requestMap);
+                if(!isNullObject(stringParameter)) {
+                    String stringValue = stringParameter.toString();
+                    budget.string(source, stringValue);
                     doValidatePattern(stringValue, templateData);
                     checkMaxMinStringLength(templateData, source, stringValue);
                     generatedRequestMap.put(key, stringValue);
@@ -182,21 +236,18 @@ public class ApiParameterResolverImpl implements ApiParameterResolver {
                 Object parameterValues = getParameterValue(templateData, source, requestMap);
 
                 if(parameterValues != null) {
-                    List<Integer> array = new ArrayList<>();
-                    List<Integer> valuesArray = new ArrayList<>();
-
-                    if(parameterValues instanceof List)
-                        array = (List)parameterValues;
-                    else
-                        array.add(toInt(parameterValues));
+                    List<?> array = parameterValues instanceof List ?
+                            (List<?>)parameterValues : Collections.singletonList(parameterValues);
 
-                    if(isNull(templateData.get(MAX_SIZE))) {
-                        int maxSize = toInt(templateData.get(MAX_SIZE).toString());
+                    if(!isNull(templateData.get(MAX_SIZE))) {
+                        int maxSize = toInt(templateData.get(MAX_SIZE));
                         if(array.size() > maxSize)
                             throw new ParameterResolveException(source + " " + ARR_MST_UND + " " + maxSize);
                     }
+                    budget.array(source, array.size(), null);
 
-                    for(Integer it : array){
+                    List<Integer> valuesArray = new ArrayList<>(array.size());
+                    for(Object it : array){
                         if(!isInteger(it)) throw new ParameterResolveException(source + " " + PR_MST_NMBR);
                         int parameterValue = toInt(it);
                         Object maxValue = templateData.get(MAX_VALUE);
@@ -217,29 +268,26 @@ public class ApiParameterResolverImpl implements ApiParameterResolver {
                 Object parameterLongValues = getParameterValue(templateData, source, requestMap);
 
                 if(parameterLongValues != null) {
-                    List<Long> longArray = new ArrayList<>();
-                    List<Long> longValuesArray = new ArrayList<>();
-
-                    if(parameterLongValues instanceof List)
-                        longArray = (List)parameterLongValues;
-                    else
-                        longArray.add(toLong(parameterLongValues));
+                    List<?> longArray = parameterLongValues instanceof List ?
+                            (List<?>)parameterLongValues : Collections.singletonList(parameterLongValues);
 
                     if(!isNullObject(templateData.get(MAX_SIZE))) {
-                        int maxSize = toInt(templateData.get(MAX_SIZE).toString());
+                        int maxSize = toInt(templateData.get(MAX_SIZE));
                         if(longArray.size() > maxSize)
                             throw new ParameterResolveException(source + " " + ARR_MST_UND + " " + maxSize);
                     }
+                    budget.array(source, longArray.size(), null);
 
-                    for(Long it : longArray){
+                    List<Long> longValuesArray = new ArrayList<>(longArray.size());
+                    for(Object it : longArray){
                         if(!isLong(it)) throw new ParameterResolveException(source + " " + PR_MST_NMBR);
-                        Long parameterLong = toLong(it);
+                        long parameterLong = toLong(it);
                         Object maxValue = templateData.get(MAX_VALUE);
                         Object minValue = templateData.get(MIN_VALUE);
 
-                        if(!isNullObject(maxValue) && isNotUnderMaxValue(parameterLongValues, maxValue))
+                        if(!isNullObject(maxValue) && isNotUnderMaxValue(parameterLong, maxValue))
                             throw new ParameterResolveException("all " + source + "'s must be under " + maxValue);
-                        if(!isNullObject(minValue) && isNotOverMinValue(parameterLongValues, minValue))
+                        if(!isNullObject(minValue) && isNotOverMinValue(parameterLong, minValue))
                             throw new ParameterResolveException("all " + source + "'s must be over " + minValue);
 
                         longValuesArray.add(parameterLong);
@@ -253,27 +301,28 @@ public class ApiParameterResolverImpl implements ApiParameterResolver {
                 List<String> stringValues = (List<String>)getParameterValue(templateData, source, requestMap);
 
                 if(stringValues != null) {
-                    List<String> stringArray = new ArrayList<>();
-                    stringArray.addAll(stringValues);
-
                     if(templateData.get(MAX_SIZE) != null) {
-                        int maxSize = toInt(templateData.get(MAX_SIZE).toString());
-                        if(stringArray.size() > maxSize)
+                        int maxSize = toInt(templateData.get(MAX_SIZE));
+                        if(stringValues.size() > maxSize)
                             throw new ParameterResolveException(source + " " + ARR_MST_UND + " " + maxSize);
                     }
+                    budget.array(source, stringValues.size(), null);
+                    List<String> stringArray = new ArrayList<>(stringValues);
 
+                    Pattern pattern = !isNullObject(templateData.get(PATTERN)) ?
+                            Pattern.compile(templateData.get(PATTERN).toString()) : null;
                     List<String> stringValuesArray = new ArrayList<>();
                     for(String st : stringArray){
-                        pattern = Pattern.compile(templateData.get(PATTERN).toString());
+                        budget.string(source, st);
                         if (!isNullObject(pattern) && !isNullObject(st) && !st.isEmpty() && !pattern.matcher(st).matches())
                             throw new ParameterResolveException("all " + source + "'s must be follow " + pattern);
 
                         Object maxLength = templateData.get(MAX_LENGTH);
                         Object minLength = templateData.get(MIN_LENGTH);
 
-                        if(!isNullObject(maxLength) && st.length() > (toInt(maxLength.toString())))
+                        if(!isNullObject(maxLength) && st.length() > (toInt(maxLength)))
                             throw new ParameterResolveException("all "+ source +"'s length must be under " + maxLength);
-                        if(!isNullObject(minLength) && st.length() < (toInt(minLength.toString())))
+                        if(!isNullObject(minLength) && st.length() < (toInt(minLength)))
                             throw new ParameterResolveException("all " + source + "'s length must be over " + minLength);
 
                         stringValuesArray.add(st);
@@ -291,41 +340,38 @@ public class ApiParameterResolverImpl implements ApiParameterResolver {
 
                     List parameters = (List)templateData.get(PARAMETERS);
                     for(Object it : parameters)
-                        resolveRequestRecursively((Map)objectValue, (Map)it, generatedObjectMap, null);
+                        resolveRequestRecursively((Map)objectValue, (Map)it, generatedObjectMap, null, budget, depth + 1);
 
                     generatedRequestMap.put(key, generatedObjectMap);
                 }
                 break;
 
             case TYPE_OBJECT_ARRAY:
-                Map objectArrayValue = (Map)getParameterValue(templateData, source, requestMap);
+                Object objectArrayValue = getParameterValue(templateData, source, requestMap);
 
                 if(!isNullObject(objectArrayValue)) {
-                    List objArr = new ArrayList();
-                    String childName = templateData.get(TYPE_OBJECT_CHILDNAME).toString();
+                    String childName = !isNullObject(templateData.get(TYPE_OBJECT_CHILDNAME)) ?
+                            templateData.get(TYPE_OBJECT_CHILDNAME).toString() : null;
                     if(!(templateData.get(PARAMETERS) instanceof List))
                         throw new ParameterResolveException(source + " " + PR_MST_LST);
-                    if(childName != null) {
-                        for(Object objectDataMap : (List)objectArrayValue.get(childName)){
-                            Map generatedObjectResponse = new HashMap();
-                            for(Object objectTemplateElement : (List) templateData.get(PARAMETERS)){
-                                resolveRequestRecursively((Map)objectDataMap, (Map)objectTemplateElement, generatedObjectResponse, null);
-                            }
-
-                            Map childResponse = new HashMap();
-                            objArr.add(childResponse);
-                        }
-                    } else {
-                        for(Object objectDataMap : (List)objectArrayValue){
-                            Map generatedObjectResponse = new HashMap();
-                            for(Object objectTemplateElement : (List)templateData.get(PARAMETERS))
-                                resolveRequestRecursively((Map)objectDataMap, (Map)objectTemplateElement, generatedObjectResponse, null);
-
-                            objArr.add(generatedObjectResponse);
-                        }
-                    }
+                    List parameters = (List)templateData.get(PARAMETERS);
+                    List elements = childName != null ? (List)((Map)objectArrayValue).get(childName) : (List)objectArrayValue;
+                    if(elements != null) budget.array(source, elements.size(), templateData.get(MAX_SIZE));
+
+                    List objArr = arrayResolver.resolve(elements != null ? elements : Collections.emptyList(), objectDataMap -> {
+                        Map generatedObjectResponse = new HashMap();
+                        for(Object objectTemplateElement : parameters)
+                            resolveRequestRecursively((Map)objectDataMap, (Map)objectTemplateElement, generatedObjectResponse,
+                                    null, budget, depth + 1);
+
+                        if(childName == null) return generatedObjectResponse;
+                        Map childResponse = new HashMap();
+                        childResponse.put(childName, generatedObjectResponse);
+                        return childResponse;
+                    });
                     generatedRequestMap.put(key, objArr);
                 }
+                break;
 
                 // Source for the value of the parameter with type=clientid is X-ClientId header
             case TYPE_CLIENTID:
@@ -366,17 +412,35 @@ public class ApiParameterResolverImpl implements ApiParameterResolver {
             throws ParameterResolveException {
         Object parameterValue =  requestMap.get(datasource);
 
-        boolean isRequired = templateData.get(REQUIRED).toString().toLowerCase().equals("true");
-        if(isRequired) {
-            if(!isNullObject(parameterValue) || StringUtils.isBlank(parameterValue.toString()))
+        boolean isRequired = String.valueOf(templateData.get(REQUIRED)).equalsIgnoreCase("true");
+        if(isNullObject(parameterValue) || StringUtils.isBlank(parameterValue.toString())) {
+            if(isRequired)
                 throw new ParameterResolveException(datasource + " " + PR_MST);
-        } else {
-            if(!isNullObject(parameterValue) || StringUtils.isBlank(parameterValue.toString()))
-                parameterValue = templateData.get(DEFAULT);
+            parameterValue = templateData.get(DEFAULT);
         }
         return parameterValue;
     }
 
+    /**
+     * Allowed values of an option or intoption parameter, compiled on first use of the template parameter
+     * @param templateData
+     * @param source
+     * @param intOption true for intoption
+     * @return compiled option set
+     */
+    private OptionSet getOptionSet(Map templateData, String source, boolean intOption)
+            throws ParameterResolveException {
+        OptionSet options = optionSets.getIfPresent(templateData);
+        if(options == null) {
+            if(!(templateData.get(OPTION) instanceof Collection))
+                throw new ParameterResolveException(source + " " + OPT_MST);
+            Collection<?> values = (Collection<?>)templateData.get(OPTION);
+            options = intOption ? OptionSet.ofInts(source, values) : OptionSet.of(source, values);
+            optionSets.put(templateData, options);
+        }
+        return options;
+    }
+
     /**
      * Check value is null
      *
@@ -396,11 +460,11 @@ public class ApiParameterResolverImpl implements ApiParameterResolver {
      */
     private void checkMaxMinValue(Object maxValue, Object minValue, String key, Object givenValue)
             throws ParameterResolveException {
-        if(isNull(maxValue) && isNotUnderMaxValue(givenValue, maxValue))
+        if(!isNull(maxValue) && isNotUnderMaxValue(givenValue, maxValue))
             throw new ParameterResolveException(key + " " + MST_UND + maxValue);
 
-        if(isNull(minValue) && isNotOverMinValue(givenValue, minValue))
-            throw new ParameterResolveException(key + " " + MST_OV + maxValue);
+        if(!isNull(minValue) && isNotOverMinValue(givenValue, minValue))
+            throw new ParameterResolveException(key + " " + MST_OV + minValue);
 
     }
 
@@ -430,7 +494,7 @@ public class ApiParameterResolverImpl implements ApiParameterResolver {
      * @return true if the givenValue is integer
      */
     private boolean isInteger(Object givenValue) {
-        return isInteger(givenValue.toString());
+        return TypeCoercion.isInt(givenValue);
     }
 
     /**
@@ -439,7 +503,7 @@ public class ApiParameterResolverImpl implements ApiParameterResolver {
      * @return true if the givenValue is long
      */
     private boolean isLong(Object givenValue) {
-        return isLong(givenValue.toString());
+        return TypeCoercion.isLong(givenValue);
     }
 
     /**
@@ -466,13 +530,13 @@ public class ApiParameterResolverImpl implements ApiParameterResolver {
      * @param templateData
      */
     private void doValidatePattern(Object origin, Map templateData) throws ParameterResolveException {
-        pattern = Pattern.compile(templateData.get(PATTERN).toString());
-        if (!isNullObject(pattern) && !isNullObject(origin) && !origin.toString().isEmpty()) {
-            if (!pattern.matcher(origin.toString()).matches())
-                throw new ParameterResolveException(templateData.get(SOURCE) != null? "" :
-                        templateData.get(NAME) + " " + MST_FLLW + " " + pattern);
-
-        }
+        if (isNullObject(templateData.get(PATTERN)) || isNullObject(origin)) return;
+        String text = origin.toString();
+        if (text.isEmpty()) return;
+        Pattern pattern = Pattern.compile(templateData.get(PATTERN).toString());
+        if (!pattern.matcher(text).matches())
+            throw new ParameterResolveException((templateData.get(SOURCE) != null ? templateData.get(SOURCE) :
+                    templateData.get(NAME)) + " " + MST_FLLW + " " + pattern);
     }
 
 
@@ -510,6 +574,23 @@ public class ApiParameterResolverImpl implements ApiParameterResolver {
         return generatedMap;
     }
 
+    /**
+     * Compile the response template into a serializer, once per json configuration
+     * @param jsonTemplateMap
+     * @return compiled template
+     * @throws ParameterResolveException
+     */
+    @Override
+    public ResponseTemplate compileResponseParameter(Map<String, Object> jsonTemplateMap)
+                                                    throws ParameterResolveException {
+        ResponseTemplate template = responseTemplates.getIfPresent(jsonTemplateMap);
+        if (template == null) {
+            template = ResponseTemplate.compile(jsonTemplateMap);
+            responseTemplates.put(jsonTemplateMap, template);
+        }
+        return template;
+    }
+
     /**
      * Resolve response parameters recursively
      * checks actual response with templateParameterMap as mentioned json file and prepare the response accordingly
@@ -531,13 +612,7 @@ public class ApiParameterResolverImpl implements ApiParameterResolver {
 
         switch(type) {
             case TYPE_BOOLEAN:
-                boolean convertedValue =  false;
-                if(parameterValue.toString().toLowerCase().equals("true"))
-                    convertedValue = true;
-                else if (isNumber(parameterValue.toString()) && toInt(parameterValue.toString()) > 0)
-                    convertedValue = true;
-
-                generatedMap.put(key, convertedValue);
+                generatedMap.put(key, TypeCoercion.toBoolean(parameterValue));
                 break;
 
             case TYPE_INT:
@@ -565,12 +640,12 @@ public class ApiParameterResolverImpl implements ApiParameterResolver {
                 break;
 
             case TYPE_DECIMAL:
-                BigDecimal bigDecimalValue = new BigDecimal(0.0);
+                BigDecimal bigDecimalValue = BigDecimal.ZERO;
                 if(parameterValue != null) {
-                    if(!isBigDecimal(parameterValue.toString())) {
+                    bigDecimalValue = TypeCoercion.toDecimal(parameterValue);
+                    if(bigDecimalValue == null) {
                         throw new ParameterResolveException(source + " " + PR_MST_DEC);
                     }
-                    bigDecimalValue = new BigDecimal(parameterValue.toString());
                 }
 
                 generatedMap.put(key, bigDecimalValue);
@@ -578,12 +653,9 @@ public class ApiParameterResolverImpl implements ApiParameterResolver {
 
             case TYPE_OPTION:
                 if(parameterValue != null) {
-                    List values = (List)templateData.get(OPTION);
-                    if(values == null) {
-                        throw new ParameterResolveException(source + " " + OPT_MST);
-                    }
-                    if(values.stream().anyMatch(ti -> ti != parameterValue)){
-                        throw new ParameterResolveException("set " + source + " from " + values.add(','));
+                    OptionSet options = getOptionSet(templateData, source, false);
+                    if(!options.contains(parameterValue)){
+                        throw new ParameterResolveException(options.getErrorMessage());
                     }
                 }
                 generatedMap.put(key, parameterValue);
@@ -606,13 +678,13 @@ public class ApiParameterResolverImpl implements ApiParameterResolver {
                             if(!isInteger(it)) {
                                 throw new ParameterResolveException(source + " " + PR_MST_NMBR);
                             }
-                            array.add(toInt(it.toString()));
+                            array.add(toInt(it));
                         }
                     } else {
                         if(!isInteger(parameterValue)) {
                             throw new ParameterResolveException(source + " " + PR_MST_NMBR);
                         }
-                        array.add(toInt(parameterValue.toString()));
+                        array.add(toInt(parameterValue));
                     }
                 }
                 generatedMap.put(key, array);
@@ -626,13 +698,13 @@ public class ApiParameterResolverImpl implements ApiParameterResolver {
                             if(!isLong(it)) {
                                 throw new ParameterResolveException(source + " " + PR_MST_NMBR);
                             }
-                            longArray.add(toLong(it.toString()));
+                            longArray.add(toLong(it));
                         }
                     } else {
                         if(!isLong(parameterValue)) {
                             throw new ParameterResolveException(source + " " + PR_MST_NMBR);
                         }
-                        longArray.add(toLong(parameterValue.toString()));
+                        longArray.add(toLong(parameterValue));
                     }
                 }
                 generatedMap.put(key, longArray);
@@ -662,32 +734,25 @@ public class ApiParameterResolverImpl implements ApiParameterResolver {
 
             case TYPE_OBJECT_ARRAY:
                 List<Object> objects = new ArrayList<>();
-                Map parameter = (Map) parameterValue;
-                if(!isNullObject(parameter)) {
-                    String childName = templateData.get(TYPE_OBJECT_CHILDNAME).toString();
+                if(!isNullObject(parameterValue)) {
+                    String childName = !isNullObject(templateData.get(TYPE_OBJECT_CHILDNAME)) ?
+                            templateData.get(TYPE_OBJECT_CHILDNAME).toString() : null;
                     if(!(templateData.get(PARAMETERS) instanceof List)) {
                         throw new ParameterResolveException(source + " " + PR_MST_LST);
                     }
-                    if(!isNullObject(childName)) {
-                        for(Object objectDataMap : (List)parameter.get(childName)){
-                            Map generatedObjectesp = new HashMap();
-
-                            for(Object objectTemplateElement : (List)templateData.get(PARAMETERS))
-                                resolveResponseRecursively((Map)objectDataMap, (Map)objectTemplateElement, generatedObjectesp);
-
-                            Map childResponse = new HashMap();
-                            childResponse.put(childName, generatedObjectesp) ;
-                            objects.add(childResponse);
-                        }
-                    } else {
-                        for(Object objectDataMap : (List)parameterValue){
-                            generatedObjectResponse = new HashMap();
-                            for(Object objectTemplateElement : (List)templateData.get(PARAMETERS))
-                                resolveResponseRecursively((Map)objectDataMap, (Map)objectTemplateElement, generatedObjectResponse);
-
-                            objects.add(generatedObjectResponse);
-                        }
-                    }
+                    List parameters = (List)templateData.get(PARAMETERS);
+                    List elements = childName != null ? (List)((Map)parameterValue).get(childName) : (List)parameterValue;
+
+                    objects = arrayResolver.resolve(elements != null ? elements : Collections.emptyList(), objectDataMap -> {
+                        Map generatedObjectesp = new HashMap();
+                        for(Object objectTemplateElement : parameters)
+                            resolveResponseRecursively((Map)objectDataMap, (Map)objectTemplateElement, generatedObjectesp);
+
+                        if(childName == null) return generatedObjectesp;
+                        Map childResponse = new HashMap();
+                        childResponse.put(childName, generatedObjectesp);
+                        return childResponse;
+                    });
                 }
 
                 generatedMap.put(key, objects);
@@ -2,6 +2,7 @@ package info.doula.logic.impl;
 
 import info.doula.exception.ServiceConditionException;
 import info.doula.logic.CallApi;
+import info.doula.response.StreamingResponse;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
@@ -43,6 +44,11 @@ class CallApiLogicImpl implements CallApi {
 		return null;
 	}
 
+	@Override
+	public StreamingResponse requestStream(Map<String, ?> connectionMap, Map<String, ?> param) throws ServiceConditionException, IOException {
+		return null;
+	}
+
 	@Override
 	public String requestAsynchronousGet(Map<String, ?> connectionMap, Map<String, ?> param) throws ServiceConditionException, IOException {
 		return null;
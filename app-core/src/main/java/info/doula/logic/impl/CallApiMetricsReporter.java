@@ -0,0 +1,25 @@
+package info.doula.logic.impl;
+
+import info.doula.system.MetricsReporter;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Exposes circuit breaker state, trip counts and retry budget of the outbound calls
+ *
+ * @author hossaindoula
+ */
+@Component
+class CallApiMetricsReporter implements MetricsReporter {
+
+    @Override
+    public String getName() {
+        return "callapi";
+    }
+
+    @Override
+    public Map<String, Object> report() {
+        return CircuitBreakerRegistry.getInstance().report();
+    }
+}
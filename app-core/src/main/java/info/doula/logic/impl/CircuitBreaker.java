@@ -0,0 +1,167 @@
+package info.doula.logic.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Circuit breaker for a single upstream
+ * Keeps the outcome of the last calls in a sliding window and opens when the failure rate
+ * passes the threshold. After the open duration a few trial calls are let through (half-open),
+ * the circuit closes again when all of them succeed.
+ *
+ * @author hossaindoula
+ */
+class CircuitBreaker {
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String name;
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final long openMillis;
+    private final int halfOpenCalls;
+
+    private final boolean[] window;
+    private int windowIndex = 0;
+    private int windowCount = 0;
+    private int windowFailures = 0;
+
+    private State state = State.CLOSED;
+    private long openedAt = 0L;
+    private int halfOpenPermitted = 0;
+    private int halfOpenSucceeded = 0;
+
+    private long tripCount = 0L;
+    private long rejectedCount = 0L;
+    private long successCount = 0L;
+    private long failureCount = 0L;
+
+    /**
+     * Constructor
+     *
+     * @param name upstream name
+     * @param windowSize number of latest calls kept in the sliding window
+     * @param minimumCalls calls needed in the window before the failure rate is evaluated
+     * @param failureRateThreshold failure rate (percent) which opens the circuit
+     * @param openMillis duration the circuit stays open before trial calls are allowed
+     * @param halfOpenCalls number of trial calls in half-open state
+     */
+    CircuitBreaker(String name, int windowSize, int minimumCalls, int failureRateThreshold,
+                   long openMillis, int halfOpenCalls) {
+        this.name = name;
+        this.window = new boolean[Math.max(1, windowSize)];
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, this.window.length));
+        this.failureRateThreshold = failureRateThreshold;
+        this.openMillis = openMillis;
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Check whether a call is permitted
+     *
+     * @return true if the call may be sent to the upstream
+     */
+    synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < openMillis) {
+                rejectedCount++;
+                return false;
+            }
+            state = State.HALF_OPEN;
+            halfOpenPermitted = 0;
+            halfOpenSucceeded = 0;
+        }
+
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermitted >= halfOpenCalls) {
+                rejectedCount++;
+                return false;
+            }
+            halfOpenPermitted++;
+        }
+
+        return true;
+    }
+
+    /**
+     * Give back a permit without an outcome, e.g. for a call cancelled on purpose
+     * In half-open state the trial slot is freed for another call.
+     */
+    synchronized void release() {
+        if (state == State.HALF_OPEN && halfOpenPermitted > halfOpenSucceeded) {
+            halfOpenPermitted--;
+        }
+    }
+
+    synchronized void onSuccess() {
+        successCount++;
+        if (state == State.HALF_OPEN) {
+            if (++halfOpenSucceeded >= halfOpenCalls) {
+                state = State.CLOSED;
+                resetWindow();
+            }
+            return;
+        }
+        record(false);
+    }
+
+    synchronized void onFailure() {
+        failureCount++;
+        if (state == State.HALF_OPEN) {
+            trip();
+            return;
+        }
+        record(true);
+        if (state == State.CLOSED && windowCount >= minimumCalls
+                && windowFailures * 100 >= failureRateThreshold * windowCount) {
+            trip();
+        }
+    }
+
+    synchronized State getState() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    synchronized Map<String, Object> report() {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("state", getState().name());
+        report.put("trips", tripCount);
+        report.put("rejected", rejectedCount);
+        report.put("success", successCount);
+        report.put("failure", failureCount);
+        report.put("windowCalls", windowCount);
+        report.put("windowFailures", windowFailures);
+        return report;
+    }
+
+    private void record(boolean failed) {
+        if (windowCount == window.length) {
+            if (window[windowIndex]) windowFailures--;
+        } else {
+            windowCount++;
+        }
+        window[windowIndex] = failed;
+        if (failed) windowFailures++;
+        windowIndex = (windowIndex + 1) % window.length;
+    }
+
+    private void trip() {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+        tripCount++;
+        resetWindow();
+    }
+
+    private void resetWindow() {
+        windowIndex = 0;
+        windowCount = 0;
+        windowFailures = 0;
+    }
+}
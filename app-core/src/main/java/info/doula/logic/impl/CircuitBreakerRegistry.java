@@ -0,0 +1,135 @@
+package info.doula.logic.impl;
+
+import info.doula.system.impl.AppConf;
+import info.doula.system.impl.AppConfReader;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CircuitBreakerRegistry
+ * Holds one circuit breaker and latency tracker per upstream, the retry budget
+ * and the hedge budget of the outbound calls.
+ * Settings are read from app.properties (callapi.breaker.*, callapi.retry.*, callapi.hedge.*),
+ * a breaker can be tuned per upstream with callapi.breaker.{upstream}.*
+ *
+ * @author hossaindoula
+ */
+class CircuitBreakerRegistry {
+
+    private static final CircuitBreakerRegistry instance = new CircuitBreakerRegistry();
+
+    private final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LatencyTracker> latencies = new ConcurrentHashMap<>();
+    private final RetryBudget retryBudget;
+    private final RetryBudget hedgeBudget;
+    private final int maxRetries;
+    private final AtomicLong hedged = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+
+    private CircuitBreakerRegistry() {
+        AppConfReader conf = AppConf.getInstance();
+        this.maxRetries = conf.getInt("callapi.retry.max", 2);
+        this.retryBudget = new RetryBudget(
+                conf.getInt("callapi.retry.budget.percent", 10) / 100.0,
+                conf.getInt("callapi.retry.budget.max", 20),
+                conf.getLong("callapi.retry.backoff.base", 50L),
+                conf.getLong("callapi.retry.backoff.max", 1000L));
+        // hedges are sent without backoff, the budget alone keeps them from amplifying an outage
+        this.hedgeBudget = new RetryBudget(
+                conf.getInt("callapi.hedge.budget.percent", 5) / 100.0,
+                conf.getInt("callapi.hedge.budget.max", 10),
+                0L, 0L);
+    }
+
+    static CircuitBreakerRegistry getInstance() {
+        return instance;
+    }
+
+    CircuitBreaker get(String upstream) {
+        CircuitBreaker breaker = breakers.get(upstream);
+        if (breaker != null) {
+            return breaker;
+        }
+        return breakers.computeIfAbsent(upstream, this::create);
+    }
+
+    LatencyTracker latency(String upstream) {
+        LatencyTracker tracker = latencies.get(upstream);
+        if (tracker != null) {
+            return tracker;
+        }
+        return latencies.computeIfAbsent(upstream, name -> new LatencyTracker(
+                AppConf.getInstance().getInt("callapi.hedge.samples", 256),
+                AppConf.getInstance().getInt("callapi.hedge.minimumSamples", 50)));
+    }
+
+    /**
+     * Check whether hedging is switched on for the upstream
+     * It is opt-in, either by connectionMap or by callapi.hedge.{upstream}.enabled
+     */
+    boolean isHedgeEnabled(String upstream) {
+        return AppConf.getInstance().getBoolean("callapi.hedge." + upstream + ".enabled", false);
+    }
+
+    RetryBudget getHedgeBudget() {
+        return hedgeBudget;
+    }
+
+    void onHedge() {
+        hedged.incrementAndGet();
+    }
+
+    void onHedgeWin() {
+        hedgeWins.incrementAndGet();
+    }
+
+    RetryBudget getRetryBudget() {
+        return retryBudget;
+    }
+
+    int getMaxRetries() {
+        return maxRetries;
+    }
+
+    Map<String, Object> report() {
+        Map<String, Object> upstreams = new TreeMap<>();
+        breakers.forEach((name, breaker) -> {
+            Map<String, Object> upstream = breaker.report();
+            LatencyTracker tracker = latencies.get(name);
+            if (tracker != null) upstream.put("p95", tracker.percentile95());
+            upstreams.put(name, upstream);
+        });
+
+        Map<String, Object> retry = new LinkedHashMap<>();
+        retry.put("retried", retryBudget.getRetried());
+        retry.put("budgetExhausted", retryBudget.getExhausted());
+        retry.put("tokens", retryBudget.getTokens());
+
+        Map<String, Object> hedge = new LinkedHashMap<>();
+        hedge.put("hedged", hedged.get());
+        hedge.put("hedgeWins", hedgeWins.get());
+        hedge.put("budgetExhausted", hedgeBudget.getExhausted());
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("breakers", upstreams);
+        report.put("retry", retry);
+        report.put("hedge", hedge);
+        return report;
+    }
+
+    private CircuitBreaker create(String upstream) {
+        AppConfReader conf = AppConf.getInstance();
+        String prefix = "callapi.breaker." + upstream + ".";
+        return new CircuitBreaker(upstream,
+                conf.getInt(prefix + "window", conf.getInt("callapi.breaker.window", 50)),
+                conf.getInt(prefix + "minimumCalls", conf.getInt("callapi.breaker.minimumCalls", 20)),
+                conf.getInt(prefix + "failureRate", conf.getInt("callapi.breaker.failureRate", 50)),
+                conf.getLong(prefix + "openMillis", conf.getLong("callapi.breaker.openMillis", 30000L)),
+                conf.getInt(prefix + "halfOpenCalls", conf.getInt("callapi.breaker.halfOpenCalls", 3)));
+    }
+}
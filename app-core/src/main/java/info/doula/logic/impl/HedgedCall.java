@@ -0,0 +1,178 @@
+package info.doula.logic.impl;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hedged request for an idempotent upstream read
+ * The first attempt is sent at once, a second one is sent when the first has not answered
+ * within the hedge delay. The first successful response wins and the other call is cancelled.
+ * A first attempt which already answered with a client error is not hedged. Every attempt settles
+ * its breaker permit once: success, failure, or a neutral release when it was cancelled.
+ * The wait after the hedge is bounded by the read timeout of the client, attempts still running
+ * then are cancelled and count as failures.
+ *
+ * @author hossaindoula
+ */
+class HedgedCall implements Callback {
+
+    private final OkHttpClient client;
+    private final Request request;
+    private final CircuitBreaker breaker;
+    private final LatencyTracker latency;
+
+    private final List<Call> calls = new ArrayList<>(2);
+    private final List<Long> sentAt = new ArrayList<>(2);
+    private int pending = 0;
+    private Response winner;
+    private Call winnerCall;
+    private IOException failure;
+    /** the last failed attempt was an upstream failure, worth a second attempt */
+    private boolean upstreamFailure;
+    /** the caller gave up waiting, attempts cancelled from now on timed out */
+    private boolean timedOut;
+
+    HedgedCall(OkHttpClient client, Request request, CircuitBreaker breaker, LatencyTracker latency) {
+        this.client = client;
+        this.request = request;
+        this.breaker = breaker;
+        this.latency = latency;
+    }
+
+    /**
+     * Send the request, hedge it after hedgeDelayMillis if the hedge is allowed,
+     * and wait for the first successful response
+     *
+     * @param hedgeDelayMillis delay before the second attempt
+     * @param hedgeAllowed checked once the delay has passed, e.g. against the hedge budget
+     * @return successful response, caller must close it
+     * @throws IOException if every attempt failed
+     */
+    Response execute(long hedgeDelayMillis, HedgeGate hedgeAllowed) throws IOException {
+        send();
+        try {
+            synchronized (this) {
+                long deadline = System.currentTimeMillis() + hedgeDelayMillis;
+                long remaining = hedgeDelayMillis;
+                while (winner == null && pending > 0 && remaining > 0) {
+                    wait(remaining);
+                    remaining = deadline - System.currentTimeMillis();
+                }
+                if (winner != null) return winner;
+                if (pending == 0 && !upstreamFailure) {
+                    // the upstream answered with a client error, a second attempt gets the same answer
+                    throw failure != null ? failure : new IOException("hedged request failed " + request.url());
+                }
+            }
+
+            if (hedgeAllowed.allow()) {
+                send();
+            }
+
+            synchronized (this) {
+                long timeout = client.readTimeoutMillis();
+                long deadline = System.currentTimeMillis() + timeout;
+                long remaining = timeout;
+                while (winner == null && pending > 0) {
+                    if (timeout == 0) {
+                        wait();
+                        continue;
+                    }
+                    if (remaining <= 0) {
+                        timedOut = true;
+                        cancelAll(null);
+                        throw new InterruptedIOException("hedged request timed out " + request.url());
+                    }
+                    wait(remaining);
+                    remaining = deadline - System.currentTimeMillis();
+                }
+                if (winner != null) return winner;
+                throw failure != null ? failure : new IOException("hedged request failed " + request.url());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelAll(null);
+            throw new InterruptedIOException("hedged request interrupted");
+        }
+    }
+
+    /**
+     * Whether the second attempt was the one that answered first
+     */
+    synchronized boolean isHedgeWin() {
+        return winnerCall != null && calls.indexOf(winnerCall) > 0;
+    }
+
+    private synchronized void send() {
+        Call call = client.newCall(request);
+        calls.add(call);
+        sentAt.add(System.currentTimeMillis());
+        pending++;
+        call.enqueue(this);
+    }
+
+    @Override
+    public void onResponse(Call call, Response response) throws IOException {
+        boolean close = true;
+        synchronized (this) {
+            pending--;
+            if (response.isSuccessful()) {
+                breaker.onSuccess();
+                latency.record(System.currentTimeMillis() - sentAt.get(calls.indexOf(call)));
+                if (winner == null) {
+                    winner = response;
+                    winnerCall = call;
+                    close = false;
+                    cancelAll(call);
+                }
+            } else {
+                upstreamFailure = response.code() >= 500 || response.code() == 429;
+                if (upstreamFailure) breaker.onFailure();
+                else breaker.onSuccess();
+                failure = new IOException("Unexpected code " + response);
+            }
+            notifyAll();
+        }
+        if (close) response.close();
+    }
+
+    @Override
+    public void onFailure(Call call, IOException e) {
+        synchronized (this) {
+            pending--;
+            if (call.isCanceled() && !timedOut) {
+                // the loser of the race is cancelled on purpose, that is not an upstream failure;
+                // it took at least this long, leaving it out would pull the p95 and the hedge delay down
+                breaker.release();
+                latency.record(System.currentTimeMillis() - sentAt.get(calls.indexOf(call)));
+            } else {
+                breaker.onFailure();
+                failure = e;
+                upstreamFailure = true;
+            }
+            notifyAll();
+        }
+    }
+
+    private synchronized void cancelAll(Call except) {
+        for (Call call : calls) {
+            if (call != except) call.cancel();
+        }
+    }
+
+    /**
+     * Decides whether the hedge may be sent once the delay has passed
+     */
+    @FunctionalInterface
+    interface HedgeGate {
+        boolean allow();
+    }
+}
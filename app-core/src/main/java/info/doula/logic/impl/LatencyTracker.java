@@ -0,0 +1,53 @@
+package info.doula.logic.impl;
+
+import java.util.Arrays;
+
+/**
+ * Observed latency of an upstream
+ * Keeps the latest samples in a ring buffer, the 95th percentile is recomputed
+ * only after a number of new samples so reading it stays cheap.
+ *
+ * @author hossaindoula
+ */
+class LatencyTracker {
+
+    private static final int RECOMPUTE_EVERY = 32;
+
+    private final long[] samples;
+    private final int minimumSamples;
+
+    private int index = 0;
+    private int count = 0;
+    private int sinceComputed = 0;
+    private long p95 = -1L;
+
+    LatencyTracker(int size, int minimumSamples) {
+        this.samples = new long[Math.max(1, size)];
+        this.minimumSamples = Math.max(1, Math.min(minimumSamples, this.samples.length));
+    }
+
+    synchronized void record(long millis) {
+        samples[index] = millis;
+        index = (index + 1) % samples.length;
+        if (count < samples.length) count++;
+        sinceComputed++;
+    }
+
+    /**
+     * 95th percentile of the latest samples
+     *
+     * @return latency in milliseconds, -1 if there are not enough samples yet
+     */
+    synchronized long percentile95() {
+        if (count < minimumSamples) {
+            return -1L;
+        }
+        if (p95 < 0 || sinceComputed >= RECOMPUTE_EVERY) {
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            p95 = sorted[Math.min(count - 1, (int) Math.ceil(count * 0.95) - 1)];
+            sinceComputed = 0;
+        }
+        return p95;
+    }
+}
@@ -3,6 +3,8 @@ package info.doula.logic.impl;
 import com.google.gson.Gson;
 import info.doula.exception.ServiceConditionException;
 import info.doula.logic.CallApi;
+import info.doula.logic.CallApiFallback;
+import info.doula.response.StreamingResponse;
 import info.doula.system.impl.AppConf;
 import info.doula.util.AppStringUtil;
 import okhttp3.*;
@@ -10,6 +12,7 @@ import okio.BufferedSink;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.InetSocketAddress;
 import java.net.Proxy;
 import java.util.Map;
@@ -25,8 +28,23 @@ public class OKHttpClient implements CallApi {
 
     private final Gson gson = new Gson();
 
+    private volatile OkHttpClient client;
+
 
     private OkHttpClient authenticatorClient(){
+        OkHttpClient client = this.client;
+        if (client != null) {
+            return client;
+        }
+        synchronized (this) {
+            if (this.client == null) {
+                this.client = buildClient();
+            }
+            return this.client;
+        }
+    }
+
+    private OkHttpClient buildClient(){
         OkHttpClient client;
         Integer proxyPort = AppStringUtil.convertToZeroOrRealNumber(
                 AppConf.getInstanceForMessages().getString("proxy.port"));
@@ -44,34 +62,253 @@ public class OKHttpClient implements CallApi {
         };
 
         boolean isCacheResponseEnabled = AppConf.getInstance().getBoolean("cache.response.enabled", false);
+        long connectTimeout = AppConf.getInstance().getLong("callapi.timeout.connect", 60L);
+        long writeTimeout = AppConf.getInstance().getLong("callapi.timeout.write", 60L);
+        long readTimeout = AppConf.getInstance().getLong("callapi.timeout.read", 60L);
+
+        // hedged reads run on the dispatcher, the OkHttp default of 5 calls per host would queue them;
+        // the default leaves room for two attempts of each of the 200 request threads
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(AppConf.getInstance().getInt("callapi.dispatcher.maxRequests", 400));
+        dispatcher.setMaxRequestsPerHost(AppConf.getInstance().getInt("callapi.dispatcher.maxRequestsPerHost", 400));
 
         if(isCacheResponseEnabled){
             int cacheSize = 10 * 1024 * 1024; // 10 MiB
             Cache cache = new Cache(new File("cache.directory"), cacheSize);
             client = new OkHttpClient.Builder()
-                    .connectTimeout(60, TimeUnit.SECONDS)
-                    .writeTimeout(60, TimeUnit.SECONDS)
-                    .readTimeout(60, TimeUnit.SECONDS)
+                    .connectTimeout(connectTimeout, TimeUnit.SECONDS)
+                    .writeTimeout(writeTimeout, TimeUnit.SECONDS)
+                    .readTimeout(readTimeout, TimeUnit.SECONDS)
                     .proxy(new Proxy(Proxy.Type.HTTP, new InetSocketAddress(proxyHost, proxyPort)))
                     .proxyAuthenticator(proxyAuthenticator)
+                    .dispatcher(dispatcher)
                     .cache(cache)
                     .build();
         } else {
             client = new OkHttpClient.Builder()
-                    .connectTimeout(60, TimeUnit.SECONDS)
-                    .writeTimeout(60, TimeUnit.SECONDS)
-                    .readTimeout(60, TimeUnit.SECONDS)
+                    .connectTimeout(connectTimeout, TimeUnit.SECONDS)
+                    .writeTimeout(writeTimeout, TimeUnit.SECONDS)
+                    .readTimeout(readTimeout, TimeUnit.SECONDS)
                     .proxy(new Proxy(Proxy.Type.HTTP, new InetSocketAddress(proxyHost, proxyPort)))
                     .proxyAuthenticator(proxyAuthenticator)
+                    .dispatcher(dispatcher)
                     .build();
         }
 
         return client;
     }
 
+    /**
+     * Execute the request guarded by the circuit breaker of the upstream
+     * Only idempotent requests are retried, within the retry budget and with jittered backoff
+     *
+     * @param connectionMap
+     * @param request
+     * @return successful response, caller must close it
+     * @throws ServiceConditionException if the circuit of the upstream is open
+     * @throws IOException if the last attempt failed
+     */
+    private Response execute(Map<String, ?> connectionMap, Request request)
+            throws ServiceConditionException, IOException {
+        CircuitBreakerRegistry registry = CircuitBreakerRegistry.getInstance();
+        String upstream = upstream(connectionMap, request);
+        CircuitBreaker breaker = registry.get(upstream);
+        LatencyTracker latency = registry.latency(upstream);
+        RetryBudget retryBudget = registry.getRetryBudget();
+        boolean idempotent = isIdempotent(request.method());
+        retryBudget.deposit();
+
+        IOException lastError = null;
+        for (int attempt = 0; ; attempt++) {
+            if (attempt > 0) {
+                if (!idempotent || attempt > registry.getMaxRetries() || !retryBudget.tryWithdraw()) {
+                    throw lastError;
+                }
+                backoff(retryBudget.backoffMillis(attempt));
+            }
+
+            if (!breaker.tryAcquire()) {
+                ServiceConditionException e = new ServiceConditionException(breaker.getName() + " circuit is open");
+                if (lastError != null) e.addSuppressed(lastError);
+                throw e;
+            }
+
+            Response response;
+            long sentAt = System.currentTimeMillis();
+            try {
+                response = authenticatorClient().newCall(request).execute();
+            } catch (IOException e) {
+                breaker.onFailure();
+                lastError = e;
+                continue;
+            }
+
+            if (response.isSuccessful()) {
+                breaker.onSuccess();
+                latency.record(System.currentTimeMillis() - sentAt);
+                return response;
+            }
+
+            lastError = new IOException("Unexpected code " + response);
+            response.close();
+            if (!isUpstreamFailure(response.code())) {
+                // client errors are not a sign of an unhealthy upstream and are never retried
+                breaker.onSuccess();
+                throw lastError;
+            }
+            breaker.onFailure();
+        }
+    }
+
+    /**
+     * Execute a read with hedging
+     * Once the upstream has enough latency samples, a second attempt is sent when the first
+     * has not answered within the observed p95, as long as the hedge budget allows it.
+     *
+     * @param connectionMap
+     * @param request
+     * @return successful response, caller must close it
+     * @throws ServiceConditionException if the circuit of the upstream is open
+     * @throws IOException if every attempt failed
+     */
+    private Response executeHedged(Map<String, ?> connectionMap, Request request)
+            throws ServiceConditionException, IOException {
+        final CircuitBreakerRegistry registry = CircuitBreakerRegistry.getInstance();
+        String upstream = upstream(connectionMap, request);
+        final CircuitBreaker breaker = registry.get(upstream);
+        LatencyTracker latency = registry.latency(upstream);
+        final RetryBudget hedgeBudget = registry.getHedgeBudget();
+
+        long hedgeDelay = latency.percentile95();
+        if (hedgeDelay < 0) {
+            // no latency profile of the upstream yet
+            return execute(connectionMap, request);
+        }
+
+        if (!breaker.tryAcquire()) {
+            throw new ServiceConditionException(breaker.getName() + " circuit is open");
+        }
+        hedgeBudget.deposit();
+
+        HedgedCall hedgedCall = new HedgedCall(authenticatorClient(), request, breaker, latency);
+        Response response = hedgedCall.execute(hedgeDelay, () -> {
+            if (hedgeBudget.tryWithdraw() && breaker.tryAcquire()) {
+                registry.onHedge();
+                return true;
+            }
+            return false;
+        });
+        if (hedgedCall.isHedgeWin()) registry.onHedgeWin();
+        return response;
+    }
+
+    /**
+     * Execute the request and read the whole response body
+     * GET requests of upstreams with hedging switched on are hedged.
+     * Falls back to the CallApiFallback of the connectionMap when the call fails
+     */
+    private String call(Map<String, ?> connectionMap, Request request)
+            throws ServiceConditionException, IOException {
+        try (Response response = isHedged(connectionMap, request) ?
+                executeHedged(connectionMap, request) : execute(connectionMap, request)) {
+            return response.body().string();
+        } catch (ServiceConditionException | IOException e) {
+            CallApiFallback fallback = fallback(connectionMap);
+            if (fallback == null) throw e;
+            return fallback.fallback(connectionMap, e);
+        }
+    }
+
+    private String upstream(Map<String, ?> connectionMap, Request request) {
+        Object upstream = connectionMap.get("upstream");
+        if (upstream != null) {
+            return upstream.toString();
+        }
+        return request.url().host() + ":" + request.url().port();
+    }
+
+    private boolean isHedged(Map<String, ?> connectionMap, Request request) {
+        if (!"GET".equals(request.method())) {
+            return false;
+        }
+        Object hedge = connectionMap.get("hedge");
+        if (hedge != null) {
+            return "true".equals(hedge.toString());
+        }
+        return CircuitBreakerRegistry.getInstance().isHedgeEnabled(upstream(connectionMap, request));
+    }
+
+    private CallApiFallback fallback(Map<String, ?> connectionMap) {
+        Object fallback = connectionMap.get("fallback");
+        return fallback instanceof CallApiFallback ? (CallApiFallback) fallback : null;
+    }
+
+    private boolean isIdempotent(String method) {
+        return "GET".equals(method) || "HEAD".equals(method) || "PUT".equals(method)
+                || "DELETE".equals(method) || "OPTIONS".equals(method);
+    }
+
+    private boolean isUpstreamFailure(int code) {
+        return code >= 500 || code == 429;
+    }
+
+    private void backoff(long millis) throws IOException {
+        if (millis <= 0) return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("retry backoff interrupted");
+        }
+    }
+
     @Override
     public String requestGet(Map<String, ?> connectionMap, Map<String, ?> param) throws ServiceConditionException {
-        return null;
+        Request request = new Request.Builder()
+                .url(url(connectionMap, param))
+                .build();
+        try {
+            return call(connectionMap, request);
+        } catch (IOException e) {
+            throw new ServiceConditionException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public StreamingResponse requestStream(Map<String, ?> connectionMap, Map<String, ?> param)
+            throws ServiceConditionException, IOException {
+        Request.Builder builder = new Request.Builder()
+                .url(url(connectionMap, param));
+        // asking for gzip ourselves stops OkHttp from decompressing, so the body can be passed through as it is
+        if (connectionMap.get("gzip") != null && "true".equals(connectionMap.get("gzip").toString())) {
+            builder.header("Accept-Encoding", "gzip");
+        }
+        Request request = builder.build();
+
+        Response response;
+        try {
+            response = isHedged(connectionMap, request) ?
+                    executeHedged(connectionMap, request) : execute(connectionMap, request);
+        } catch (ServiceConditionException | IOException e) {
+            CallApiFallback fallback = fallback(connectionMap);
+            if (fallback == null) throw e;
+            return StreamingResponse.of(fallback.fallback(connectionMap, e), "application/json");
+        }
+
+        ResponseBody body = response.body();
+        MediaType contentType = body.contentType();
+        return new StreamingResponse(body.source(), contentType != null ? contentType.toString() : null,
+                response.header("Content-Encoding"), response);
+    }
+
+    private HttpUrl url(Map<String, ?> connectionMap, Map<String, ?> param) {
+        HttpUrl.Builder url = HttpUrl.parse(connectionMap.get("url").toString()).newBuilder();
+        if (param != null) {
+            for (Map.Entry<String, ?> entry : param.entrySet()) {
+                if (entry.getValue() != null) url.addQueryParameter(entry.getKey(), entry.getValue().toString());
+            }
+        }
+        return url.build();
     }
 
     @Override
@@ -88,15 +325,7 @@ public class OKHttpClient implements CallApi {
         Request request = new Request.Builder()
                 .url(connectionMap.get("url").toString())
                 .build();
-        Response response = authenticatorClient().newCall(request).execute();
-        if (!response.isSuccessful()) throw new IOException("Unexpected code " + response);
-
-        Headers responseHeaders = response.headers();
-        for (int i = 0; i < responseHeaders.size(); i++) {
-            System.out.println(responseHeaders.name(i) + ": " + responseHeaders.value(i));
-        }
-
-        return response.body().string();
+        return call(connectionMap, request);
     }
 
     public String requestAsynchronousGet(Map<String, ?> connectionMap, Map<String, ?> param) throws ServiceConditionException, IOException {
@@ -105,13 +334,28 @@ public class OKHttpClient implements CallApi {
                 .url(connectionMap.get("url").toString())
                 .build();
 
+        final CircuitBreaker breaker = CircuitBreakerRegistry.getInstance().get(upstream(connectionMap, request));
+        if (!breaker.tryAcquire()) {
+            ServiceConditionException e = new ServiceConditionException(breaker.getName() + " circuit is open");
+            CallApiFallback fallback = fallback(connectionMap);
+            if (fallback == null) throw e;
+            return fallback.fallback(connectionMap, e);
+        }
+
         authenticatorClient().newCall(request).enqueue(new Callback() {
             @Override public void onFailure(Call call, IOException e) {
+                breaker.onFailure();
                 e.printStackTrace();
             }
 
             @Override public void onResponse(Call call, Response response) throws IOException {
-                if (!response.isSuccessful()) throw new IOException("Unexpected code " + response);
+                if (!response.isSuccessful()) {
+                    if (isUpstreamFailure(response.code())) breaker.onFailure();
+                    else breaker.onSuccess();
+                    response.close();
+                    throw new IOException("Unexpected code " + response);
+                }
+                breaker.onSuccess();
 
                 Headers responseHeaders = response.headers();
                 for (int i = 0, size = responseHeaders.size(); i < size; i++) {
@@ -139,10 +383,7 @@ public class OKHttpClient implements CallApi {
                 .post(RequestBody.create(MEDIA_TYPE_MARKDOWN, postBody))
                 .build();
 
-        Response response = authenticatorClient().newCall(request).execute();
-        if (!response.isSuccessful()) throw new IOException("Unexpected code " + response);
-
-        return response.body().string();
+        return call(connectionMap, request);
     }
 
     public String requestPostStreaming(Map<String, ?> connectionMap) throws ServiceConditionException, IOException, Exception {
@@ -173,10 +414,7 @@ public class OKHttpClient implements CallApi {
                 .post(requestBody)
                 .build();
 
-        Response response = authenticatorClient().newCall(request).execute();
-        if (!response.isSuccessful()) throw new IOException("Unexpected code " + response);
-
-        return response.body().string();
+        return call(connectionMap, request);
     }
 
     public String requestPostFile(Map<String, ?> connectionMap) throws ServiceConditionException, IOException, Exception {
@@ -187,10 +425,7 @@ public class OKHttpClient implements CallApi {
                 .post(RequestBody.create(MEDIA_TYPE_MARKDOWN, file))
                 .build();
 
-        Response response = authenticatorClient().newCall(request).execute();
-        if (!response.isSuccessful()) throw new IOException("Unexpected code " + response);
-
-        return response.body().string();
+        return call(connectionMap, request);
     }
 
     public String requestPostForm(Map<String, ?> connectionMap) throws ServiceConditionException, IOException, Exception {
@@ -202,10 +437,7 @@ public class OKHttpClient implements CallApi {
                 .post(formBody)
                 .build();
 
-        Response response = authenticatorClient().newCall(request).execute();
-        if (!response.isSuccessful()) throw new IOException("Unexpected code " + response);
-
-        return response.body().string();
+        return call(connectionMap, request);
     }
 
     public String requestPostMultipart(Map<String, ?> connectionMap, File file, String mimeType)
@@ -226,9 +458,6 @@ public class OKHttpClient implements CallApi {
                 .post(requestBody)
                 .build();
 
-        Response response = authenticatorClient().newCall(request).execute();
-        if (!response.isSuccessful()) throw new IOException("Unexpected code " + response);
-
-        return response.body().string();
+        return call(connectionMap, request);
     }
 }
@@ -0,0 +1,124 @@
+package info.doula.logic.impl;
+
+import info.doula.exception.ParameterResolveException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Resolves the elements of a large objectarray on a ForkJoin pool
+ * Arrays below the threshold are resolved on the calling thread. Results keep the order of the elements
+ * and the error thrown is the one of the lowest element, as in a sequential run; once an element failed
+ * the elements after it are skipped.
+ *
+ * @author hossaindoula
+ */
+class ParallelArrayResolver {
+
+    private final ForkJoinPool pool;
+    private final int threshold;
+
+    /**
+     * @param pool pool to split large arrays on, null to always resolve sequentially
+     * @param threshold smallest array which is split
+     */
+    ParallelArrayResolver(ForkJoinPool pool, int threshold) {
+        this.pool = pool;
+        this.threshold = Math.max(2, threshold);
+    }
+
+    List<Object> resolve(List<?> elements, ElementResolver resolver) throws ParameterResolveException {
+        int size = elements.size();
+        if (pool == null || size < threshold) {
+            List<Object> resolved = new ArrayList<>(size);
+            for (Object element : elements) {
+                resolved.add(resolver.resolve(element));
+            }
+            return resolved;
+        }
+
+        // leaves small enough to balance the load, large enough to amortize the task
+        int leafSize = Math.max(64, size / (pool.getParallelism() * 4));
+        Object[] results = new Object[size];
+        Failure failure = new Failure();
+        pool.invoke(new Range(elements, resolver, results, failure, 0, size, leafSize));
+
+        if (failure.exception != null) throw failure.exception;
+        return new ArrayList<>(Arrays.asList(results));
+    }
+
+    void shutdown() {
+        if (pool != null) pool.shutdown();
+    }
+
+    @FunctionalInterface
+    interface ElementResolver {
+        Object resolve(Object element) throws ParameterResolveException;
+    }
+
+    /**
+     * Lowest failed element so far
+     */
+    private static final class Failure {
+        private final AtomicInteger index = new AtomicInteger(Integer.MAX_VALUE);
+        private ParameterResolveException exception;
+
+        boolean skip(int position) {
+            return position > index.get();
+        }
+
+        synchronized void record(int position, ParameterResolveException e) {
+            if (position < index.get()) {
+                index.set(position);
+                exception = e;
+            }
+        }
+    }
+
+    private static final class Range extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<?> elements;
+        private final ElementResolver resolver;
+        private final Object[] results;
+        private final Failure failure;
+        private final int from;
+        private final int to;
+        private final int leafSize;
+
+        Range(List<?> elements, ElementResolver resolver, Object[] results, Failure failure,
+              int from, int to, int leafSize) {
+            this.elements = elements;
+            this.resolver = resolver;
+            this.results = results;
+            this.failure = failure;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > leafSize) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Range(elements, resolver, results, failure, from, middle, leafSize),
+                        new Range(elements, resolver, results, failure, middle, to, leafSize));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                if (failure.skip(i)) return;
+                try {
+                    results[i] = resolver.resolve(elements.get(i));
+                } catch (ParameterResolveException e) {
+                    failure.record(i, e);
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package info.doula.logic.impl;
+
+import info.doula.exception.ParameterResolveException;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static info.doula.entity.JsonAttributes.*;
+import static info.doula.util.NumberUtils.toLong;
+
+/**
+ * Resource budget of one request resolution
+ * Limits the nesting depth, the number of resolved values, the UTF-8 bytes of all strings and the size
+ * of every array. Each value is charged while it is resolved, so a request is rejected as soon as it goes
+ * over a limit instead of after everything was copied. The limits of a request template can only be
+ * lower than the global ones. Safe to charge from the threads of a parallel objectarray resolution.
+ *
+ * @author hossaindoula
+ */
+final class ResolutionBudget {
+
+    private final long maxDepth;
+    private final long maxElements;
+    private final long maxStringBytes;
+    private final long maxArraySize;
+
+    private final AtomicLong elements = new AtomicLong();
+    private final AtomicLong stringBytes = new AtomicLong();
+
+    ResolutionBudget(long maxDepth, long maxElements, long maxStringBytes, long maxArraySize) {
+        this.maxDepth = maxDepth;
+        this.maxElements = maxElements;
+        this.maxStringBytes = maxStringBytes;
+        this.maxArraySize = maxArraySize;
+    }
+
+    /**
+     * Budget of a request template, the template limits apply where they are lower than the global ones
+     */
+    ResolutionBudget forTemplate(Map<?, ?> requestTemplateMap) {
+        return new ResolutionBudget(
+                lower(maxDepth, requestTemplateMap.get(MAX_DEPTH)),
+                lower(maxElements, requestTemplateMap.get(MAX_ELEMENTS)),
+                lower(maxStringBytes, requestTemplateMap.get(MAX_STRING_BYTES)),
+                lower(maxArraySize, requestTemplateMap.get(MAX_ARRAY_SIZE)));
+    }
+
+    /**
+     * Charge one resolved value at the given depth, the parameters of the request are at depth 1
+     */
+    void value(String source, int depth) throws ParameterResolveException {
+        if (depth > maxDepth)
+            throw new ParameterResolveException(source + " nesting must be under " + maxDepth + " levels");
+        charge(source, 1);
+    }
+
+    /**
+     * Charge the elements of an array before they are resolved
+     *
+     * @param parameterMaxSize maxSize of the template parameter, null if not set
+     */
+    void array(String source, int size, Object parameterMaxSize) throws ParameterResolveException {
+        long limit = lower(maxArraySize, parameterMaxSize);
+        if (size > limit)
+            throw new ParameterResolveException(source + " array size must be under " + limit);
+        charge(source, size);
+    }
+
+    /**
+     * Charge the UTF-8 bytes of a string
+     */
+    void string(String source, CharSequence value) throws ParameterResolveException {
+        if (value == null) return;
+        if (stringBytes.addAndGet(utf8Length(value)) > maxStringBytes)
+            throw new ParameterResolveException(source + " request strings must be under " + maxStringBytes + " bytes");
+    }
+
+    private void charge(String source, long count) throws ParameterResolveException {
+        if (elements.addAndGet(count) > maxElements)
+            throw new ParameterResolveException(source + " request must have under " + maxElements + " values");
+    }
+
+    private static long lower(long global, Object configured) {
+        if (configured == null) return global;
+        long value = toLong(configured);
+        return value > 0 ? Math.min(global, value) : global;
+    }
+
+    private static long utf8Length(CharSequence value) {
+        long length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) length++;
+            else if (c < 0x800) length += 2;
+            else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else length += 3;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,80 @@
+package info.doula.logic.impl;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Retry budget shared by all outbound calls
+ * Every call deposits a fraction of a retry token and every retry withdraws a whole token,
+ * so retries can never be more than the given ratio of the normal traffic.
+ *
+ * @author hossaindoula
+ */
+class RetryBudget {
+
+    private final double depositPerCall;
+    private final double maxTokens;
+    private final long backoffBaseMillis;
+    private final long backoffMaxMillis;
+
+    private double tokens;
+    private long retried = 0L;
+    private long exhausted = 0L;
+
+    /**
+     * Constructor
+     *
+     * @param retryRatio retries allowed per call (e.g. 0.1 means 10% extra load)
+     * @param maxTokens maximum number of retries which can be saved up
+     * @param backoffBaseMillis backoff of the first retry
+     * @param backoffMaxMillis upper bound of the backoff
+     */
+    RetryBudget(double retryRatio, double maxTokens, long backoffBaseMillis, long backoffMaxMillis) {
+        this.depositPerCall = retryRatio;
+        this.maxTokens = maxTokens;
+        this.backoffBaseMillis = backoffBaseMillis;
+        this.backoffMaxMillis = backoffMaxMillis;
+        this.tokens = maxTokens;
+    }
+
+    synchronized void deposit() {
+        tokens = Math.min(maxTokens, tokens + depositPerCall);
+    }
+
+    /**
+     * Take a token for a retry
+     *
+     * @return true if the retry is allowed
+     */
+    synchronized boolean tryWithdraw() {
+        if (tokens < 1.0) {
+            exhausted++;
+            return false;
+        }
+        tokens -= 1.0;
+        retried++;
+        return true;
+    }
+
+    /**
+     * Exponential backoff with full jitter
+     *
+     * @param attempt retry number, starting from 1
+     * @return milliseconds to wait before the retry
+     */
+    long backoffMillis(int attempt) {
+        long ceiling = Math.min(backoffMaxMillis, backoffBaseMillis << Math.min(attempt - 1, 20));
+        return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    synchronized long getRetried() {
+        return retried;
+    }
+
+    synchronized long getExhausted() {
+        return exhausted;
+    }
+
+    synchronized double getTokens() {
+        return tokens;
+    }
+}
@@ -0,0 +1,400 @@
+package info.doula.response;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import info.doula.exception.ParameterResolveException;
+import info.doula.util.OptionSet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static info.doula.entity.JsonAttributes.*;
+import static info.doula.util.AppConstants.*;
+import static info.doula.util.TypeCoercion.*;
+
+/**
+ * Response template of an API compiled into a serializer
+ * The upstream response map is projected and type-coerced the way resolveResponseParameter does it,
+ * but written as JSON straight to the output stream instead of being copied into a new map tree first.
+ * Field names are encoded and fixed values serialized once when the template is compiled.
+ * Immutable, one compiled template serves every request of the API.
+ *
+ * @author hossaindoula
+ */
+public final class ResponseTemplate {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final boolean fastForward;
+    private final Field[] fields;
+
+    private ResponseTemplate(boolean fastForward, Field[] fields) {
+        this.fastForward = fastForward;
+        this.fields = fields;
+    }
+
+    /**
+     * Compile the response section of an API json configuration
+     *
+     * @param jsonTemplateMap json configuration of the API
+     * @return compiled template
+     * @throws ParameterResolveException if the configuration is invalid
+     */
+    @SuppressWarnings("unchecked")
+    public static ResponseTemplate compile(Map<String, Object> jsonTemplateMap) throws ParameterResolveException {
+        Object responseMap = jsonTemplateMap.get(RESPONSE);
+        Map<String, Object> response = responseMap instanceof Map ?
+                (Map<String, Object>) responseMap : Collections.emptyMap();
+
+        if (String.valueOf(response.get(FAST_FORWARD)).equals("true")) {
+            return new ResponseTemplate(true, new Field[0]);
+        }
+        if (!(response.get(PARAMETERS) instanceof List)) {
+            throw new ParameterResolveException("invalid response parameters configuration in json. " +
+                    "response parameters should be list");
+        }
+        return new ResponseTemplate(false, compileFields((List<?>) response.get(PARAMETERS), "response"));
+    }
+
+    public boolean isFastForward() {
+        return fastForward;
+    }
+
+    /**
+     * Streaming response which writes the projected response to the client
+     * The response is validated first, so a value which can not be coerced fails here with a proper
+     * error response instead of cutting off a response already committed as 200.
+     *
+     * @param response upstream response
+     * @throws ParameterResolveException if a value does not fit the template
+     */
+    public StreamingResponse stream(Map<String, Object> response) throws ParameterResolveException {
+        validate(response);
+        return new StreamingResponse(out -> {
+            try {
+                writeTo(response, out);
+            } catch (ParameterResolveException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }, Http.JSON_MIME);
+    }
+
+    /**
+     * Write the projected response as JSON, the output stream is left open
+     */
+    public void writeTo(Map<String, Object> response, OutputStream out) throws IOException, ParameterResolveException {
+        try (JsonGenerator generator = MAPPER.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            write(response, generator);
+        }
+    }
+
+    /**
+     * Write the projected response as one JSON object
+     */
+    public void write(Map<String, Object> response, JsonGenerator generator) throws IOException, ParameterResolveException {
+        if (fastForward) {
+            MAPPER.writeValue(generator, response);
+            return;
+        }
+        writeObject(fields, response, generator);
+    }
+
+    /**
+     * Run every check of the projection without writing anything
+     *
+     * @throws ParameterResolveException if a value does not fit the template
+     */
+    public void validate(Map<String, Object> response) throws ParameterResolveException {
+        if (!fastForward) checkObject(fields, response);
+    }
+
+    private static void checkObject(Field[] fields, Map<?, ?> data) throws ParameterResolveException {
+        for (Field field : fields) {
+            field.check(data == null ? null : data.get(field.source));
+        }
+    }
+
+    private static void writeObject(Field[] fields, Map<?, ?> data, JsonGenerator generator)
+            throws IOException, ParameterResolveException {
+        generator.writeStartObject();
+        for (Field field : fields) {
+            generator.writeFieldName(field.name);
+            field.writeValue(data == null ? null : data.get(field.source), generator);
+        }
+        generator.writeEndObject();
+    }
+
+    private static Field[] compileFields(List<?> parameters, String parent) throws ParameterResolveException {
+        Field[] fields = new Field[parameters.size()];
+        for (int i = 0; i < fields.length; i++) {
+            Object parameter = parameters.get(i);
+            if (!(parameter instanceof Map)) throw new ParameterResolveException(parent + " " + PR_MST_LST);
+            fields[i] = compileField((Map<?, ?>) parameter);
+        }
+        return fields;
+    }
+
+    private static Field compileField(Map<?, ?> templateData) throws ParameterResolveException {
+        String key = String.valueOf(templateData.get(NAME));
+        String type = String.valueOf(templateData.get(TYPE));
+        String source = templateData.get(SOURCE) != null ? templateData.get(SOURCE).toString() : key;
+        SerializableString name = new SerializedString(key);
+
+        switch (type) {
+            case TYPE_BOOLEAN:
+                return new Field(name, source) {
+                    @Override
+                    void writeValue(Object value, JsonGenerator generator) throws IOException {
+                        generator.writeBoolean(toBoolean(value));
+                    }
+                };
+
+            case TYPE_INT:
+            case TYPE_INTEGER:
+                return new Field(name, source) {
+                    @Override
+                    void check(Object value) throws ParameterResolveException {
+                        if (value != null && !isInt(value))
+                            throw new ParameterResolveException(source + " " + PR_MST_INT);
+                    }
+
+                    @Override
+                    void writeValue(Object value, JsonGenerator generator) throws IOException, ParameterResolveException {
+                        check(value);
+                        generator.writeNumber(value == null ? 0 : toInt(value));
+                    }
+                };
+
+            case TYPE_LONG:
+                return new Field(name, source) {
+                    @Override
+                    void check(Object value) throws ParameterResolveException {
+                        if (value != null && !isLong(value))
+                            throw new ParameterResolveException(source + " " + PR_MST_LNG);
+                    }
+
+                    @Override
+                    void writeValue(Object value, JsonGenerator generator) throws IOException, ParameterResolveException {
+                        check(value);
+                        generator.writeNumber(value == null ? 0L : toLong(value));
+                    }
+                };
+
+            case TYPE_DECIMAL:
+                return new Field(name, source) {
+                    @Override
+                    void check(Object value) throws ParameterResolveException {
+                        if (value != null && toDecimal(value) == null)
+                            throw new ParameterResolveException(source + " " + PR_MST_DEC);
+                    }
+
+                    @Override
+                    void writeValue(Object value, JsonGenerator generator) throws IOException, ParameterResolveException {
+                        if (value == null) {
+                            generator.writeNumber(BigDecimal.ZERO);
+                            return;
+                        }
+                        BigDecimal decimal = toDecimal(value);
+                        if (decimal == null) throw new ParameterResolveException(source + " " + PR_MST_DEC);
+                        generator.writeNumber(decimal);
+                    }
+                };
+
+            case TYPE_OPTION: {
+                if (!(templateData.get(OPTION) instanceof List))
+                    throw new ParameterResolveException(source + " " + OPT_MST);
+                OptionSet options = OptionSet.of(source, (List<?>) templateData.get(OPTION));
+                return new Field(name, source) {
+                    @Override
+                    void check(Object value) throws ParameterResolveException {
+                        if (value != null && !options.contains(value))
+                            throw new ParameterResolveException(options.getErrorMessage());
+                    }
+
+                    @Override
+                    void writeValue(Object value, JsonGenerator generator) throws IOException, ParameterResolveException {
+                        check(value);
+                        generator.writeObject(value);
+                    }
+                };
+            }
+
+            case TYPE_STRING:
+                return new Field(name, source) {
+                    @Override
+                    void writeValue(Object value, JsonGenerator generator) throws IOException {
+                        if (value == null) generator.writeNull();
+                        else generator.writeString(value.toString());
+                    }
+                };
+
+            case TYPE_FIXED: {
+                // serialized once, written as it is for every response
+                String json;
+                try {
+                    json = MAPPER.writeValueAsString(templateData.get(VALUE));
+                } catch (JsonProcessingException e) {
+                    throw new ParameterResolveException(source + " " + e.getMessage());
+                }
+                return new Field(name, source) {
+                    @Override
+                    void writeValue(Object value, JsonGenerator generator) throws IOException {
+                        generator.writeRawValue(json);
+                    }
+                };
+            }
+
+            case TYPE_INT_ARRAY:
+            case TYPE_INTEGER_ARRAY:
+                return new Field(name, source) {
+                    @Override
+                    void check(Object value) throws ParameterResolveException {
+                        for (Object element : elements(value)) {
+                            if (!isInt(element)) throw new ParameterResolveException(source + " " + PR_MST_NMBR);
+                        }
+                    }
+
+                    @Override
+                    void writeValue(Object value, JsonGenerator generator) throws IOException, ParameterResolveException {
+                        generator.writeStartArray();
+                        for (Object element : elements(value)) {
+                            if (!isInt(element))
+                                throw new ParameterResolveException(source + " " + PR_MST_NMBR);
+                            generator.writeNumber(toInt(element));
+                        }
+                        generator.writeEndArray();
+                    }
+                };
+
+            case TYPE_LONG_ARRAY:
+                return new Field(name, source) {
+                    @Override
+                    void check(Object value) throws ParameterResolveException {
+                        for (Object element : elements(value)) {
+                            if (!isLong(element)) throw new ParameterResolveException(source + " " + PR_MST_NMBR);
+                        }
+                    }
+
+                    @Override
+                    void writeValue(Object value, JsonGenerator generator) throws IOException, ParameterResolveException {
+                        generator.writeStartArray();
+                        for (Object element : elements(value)) {
+                            if (!isLong(element))
+                                throw new ParameterResolveException(source + " " + PR_MST_NMBR);
+                            generator.writeNumber(toLong(element));
+                        }
+                        generator.writeEndArray();
+                    }
+                };
+
+            case TYPE_STRING_ARRAY:
+                return new Field(name, source) {
+                    @Override
+                    void writeValue(Object value, JsonGenerator generator) throws IOException {
+                        generator.writeStartArray();
+                        for (Object element : elements(value)) {
+                            if (element == null) generator.writeNull();
+                            else generator.writeString(element.toString());
+                        }
+                        generator.writeEndArray();
+                    }
+                };
+
+            case TYPE_OBJECT: {
+                if (!(templateData.get(PARAMETERS) instanceof List))
+                    throw new ParameterResolveException(source + " " + PR_MST_LST);
+                Field[] children = compileFields((List<?>) templateData.get(PARAMETERS), source);
+                return new Field(name, source) {
+                    @Override
+                    void check(Object value) throws ParameterResolveException {
+                        if (value != null) checkObject(children, asMap(value, source));
+                    }
+
+                    @Override
+                    void writeValue(Object value, JsonGenerator generator) throws IOException, ParameterResolveException {
+                        if (value == null) generator.writeNull();
+                        else writeObject(children, asMap(value, source), generator);
+                    }
+                };
+            }
+
+            case TYPE_OBJECT_ARRAY: {
+                if (!(templateData.get(PARAMETERS) instanceof List))
+                    throw new ParameterResolveException(source + " " + PR_MST_LST);
+                Field[] children = compileFields((List<?>) templateData.get(PARAMETERS), source);
+                Object childNameValue = templateData.get(TYPE_OBJECT_CHILDNAME);
+                String childName = childNameValue == null ? null : childNameValue.toString();
+                SerializableString wrapper = childName == null ? null : new SerializedString(childName);
+                return new Field(name, source) {
+                    @Override
+                    void check(Object value) throws ParameterResolveException {
+                        Object list = childName != null && value != null ? asMap(value, source).get(childName) : value;
+                        for (Object element : elements(list)) {
+                            checkObject(children, element == null ? null : asMap(element, source));
+                        }
+                    }
+
+                    @Override
+                    void writeValue(Object value, JsonGenerator generator) throws IOException, ParameterResolveException {
+                        // with a child name the elements are listed under that name and each one is wrapped in it
+                        Object list = childName != null && value != null ? asMap(value, source).get(childName) : value;
+                        generator.writeStartArray();
+                        for (Object element : elements(list)) {
+                            if (wrapper != null) {
+                                generator.writeStartObject();
+                                generator.writeFieldName(wrapper);
+                            }
+                            writeObject(children, element == null ? null : asMap(element, source), generator);
+                            if (wrapper != null) generator.writeEndObject();
+                        }
+                        generator.writeEndArray();
+                    }
+                };
+            }
+
+            default:
+                throw new ParameterResolveException(source + " " + UNKNOWN_TYPE + " " + type);
+        }
+    }
+
+    private static List<?> elements(Object value) {
+        if (value == null) return Collections.emptyList();
+        if (value instanceof List) return (List<?>) value;
+        return Collections.singletonList(value);
+    }
+
+    private static Map<?, ?> asMap(Object value, String source) throws ParameterResolveException {
+        if (!(value instanceof Map)) throw new ParameterResolveException(source + " " + PR_MST_LST);
+        return (Map<?, ?>) value;
+    }
+
+    /**
+     * One template parameter, the field name is written by the enclosing object
+     */
+    private abstract static class Field {
+        final SerializableString name;
+        final String source;
+
+        Field(SerializableString name, String source) {
+            this.name = name;
+            this.source = source;
+        }
+
+        /**
+         * Checks of writeValue without writing, only fields which can fail override it
+         */
+        void check(Object value) throws ParameterResolveException {
+        }
+
+        abstract void writeValue(Object value, JsonGenerator generator) throws IOException, ParameterResolveException;
+    }
+}
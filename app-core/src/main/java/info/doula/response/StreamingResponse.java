@@ -0,0 +1,166 @@
+package info.doula.response;
+
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.GzipSource;
+import okio.Okio;
+import okio.Source;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Upstream response body which is copied to the client without being buffered on the heap
+ * A business module returns it from its operation instead of a response map,
+ * the gateway copies it to the servlet output stream chunk by chunk.
+ * A body which is produced rather than read, e.g. a projected response, is written by a BodyWriter instead.
+ *
+ * @author hossaindoula
+ */
+public class StreamingResponse implements Closeable {
+
+    /**
+     * Request attribute which carries the streaming response from the logic to the controller
+     */
+    public static final String ATTRIBUTE = StreamingResponse.class.getName();
+
+    private static final long CHUNK_SIZE = 8192L;
+
+    private static final String GZIP = "gzip";
+
+    private final BufferedSource source;
+    private final BodyWriter writer;
+    private final String contentType;
+    private final String contentEncoding;
+    private final Closeable resource;
+    private final List<Transform> transforms = new ArrayList<>();
+
+    /**
+     * Constructor
+     *
+     * @param source body of the upstream response
+     * @param contentType content type of the body
+     * @param contentEncoding content encoding of the body, null for identity
+     * @param resource released after the body is written (e.g. the upstream response), may be null
+     */
+    public StreamingResponse(BufferedSource source, String contentType, String contentEncoding, Closeable resource) {
+        this.source = source;
+        this.writer = null;
+        this.contentType = contentType;
+        this.contentEncoding = contentEncoding;
+        this.resource = resource;
+    }
+
+    /**
+     * Constructor of a body written straight to the client output stream
+     *
+     * @param writer writes the body
+     * @param contentType content type of the body
+     */
+    public StreamingResponse(BodyWriter writer, String contentType) {
+        this.source = null;
+        this.writer = writer;
+        this.contentType = contentType;
+        this.contentEncoding = null;
+        this.resource = null;
+    }
+
+    /**
+     * Streaming response of an in-memory body
+     */
+    public static StreamingResponse of(String body, String contentType) {
+        return new StreamingResponse(new Buffer().writeUtf8(body), contentType, null, null);
+    }
+
+    /**
+     * Add a transform to the pipeline, transforms are applied in the order they are added
+     *
+     * @param transform
+     * @return this
+     */
+    public StreamingResponse transform(Transform transform) {
+        if (writer != null) throw new IllegalStateException("a written body can not be transformed");
+        transforms.add(transform);
+        return this;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Check whether the body can be sent to the client as it is, still gzip encoded
+     *
+     * @param gzipAccepted whether the client accepts gzip
+     * @return true if the body will be written gzip encoded
+     */
+    public boolean isGzipPassThrough(boolean gzipAccepted) {
+        return gzipAccepted && transforms.isEmpty() && GZIP.equalsIgnoreCase(contentEncoding);
+    }
+
+    /**
+     * Copy the body to the given output stream chunk by chunk and release the upstream response
+     * Writes block while the client is slow to read, so at most one chunk is held per request.
+     *
+     * @param out client output stream
+     * @param gzipAccepted whether the client accepts gzip
+     * @throws IOException
+     */
+    public void writeTo(OutputStream out, boolean gzipAccepted) throws IOException {
+        try {
+            if (writer != null) {
+                writer.writeTo(out);
+                out.flush();
+                return;
+            }
+
+            Source body = source;
+            if (GZIP.equalsIgnoreCase(contentEncoding) && !isGzipPassThrough(gzipAccepted)) {
+                body = new GzipSource(body);
+            }
+            for (Transform transform : transforms) {
+                body = transform.apply(Okio.buffer(body));
+            }
+
+            BufferedSink sink = Okio.buffer(Okio.sink(out));
+            Buffer chunk = new Buffer();
+            while (body.read(chunk, CHUNK_SIZE) != -1) {
+                sink.write(chunk, chunk.size());
+                sink.emit();
+            }
+            sink.flush();
+        } finally {
+            close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (resource != null) {
+            resource.close();
+        } else if (source != null) {
+            source.close();
+        }
+    }
+
+    /**
+     * Writes a body to the client output stream, which it must not close
+     */
+    @FunctionalInterface
+    public interface BodyWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Transform step of the streaming pipeline, e.g. filtering or rewriting the upstream body
+     * The returned source must read from the given one lazily.
+     */
+    @FunctionalInterface
+    public interface Transform {
+        Source apply(BufferedSource source) throws IOException;
+    }
+}
@@ -0,0 +1,26 @@
+package info.doula.system;
+
+import java.util.Map;
+
+/**
+ * Provides runtime statistics of a platform component
+ * All the reporters are collected by the management metrics endpoint
+ *
+ * @author hossaindoula
+ *
+ */
+public interface MetricsReporter {
+
+	/**
+	 * Name of the metrics group
+	 * @return name
+	 */
+	String getName();
+
+	/**
+	 * Current snapshot of the metrics
+	 * @return metrics map
+	 */
+	Map<String, Object> report();
+
+}
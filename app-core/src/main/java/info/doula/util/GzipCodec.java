@@ -0,0 +1,172 @@
+package info.doula.util;
+
+import info.doula.system.impl.AppConf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Gzip encoder backed by a pool of Deflater instances
+ * GZIPOutputStream allocates a new Deflater (and its native memory) for every stream,
+ * here the deflaters are reset and reused instead.
+ * The compression level and pool size are read from app.properties
+ * (response.compression.level, response.compression.pool.size).
+ *
+ * @author hossaindoula
+ */
+public final class GzipCodec {
+
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private static final int LEVEL = AppConf.getInstance().getInt("response.compression.level", Deflater.DEFAULT_COMPRESSION);
+
+    private static final BlockingQueue<Deflater> pool =
+            new ArrayBlockingQueue<>(Math.max(1, AppConf.getInstance().getInt("response.compression.pool.size", 32)));
+
+    private GzipCodec() {}
+
+    /**
+     * Compress the given bytes into a complete gzip member
+     * Useful to keep precompressed bodies, e.g. in a response cache
+     *
+     * @param data
+     * @return gzip encoded bytes
+     */
+    public static byte[] compress(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+        try (OutputStream gzip = newOutputStream(out)) {
+            gzip.write(data);
+        } catch (IOException e) {
+            // ByteArrayOutputStream never throws
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Open a gzip stream on top of the given stream
+     * Closing the returned stream writes the gzip trailer and gives the deflater back to the pool,
+     * the given stream itself is left open.
+     *
+     * @param out target stream
+     * @return gzip stream
+     * @throws IOException
+     */
+    public static GzipStream newOutputStream(OutputStream out) throws IOException {
+        return new GzipStream(out, borrow());
+    }
+
+    /**
+     * Check an Accept-Encoding header for the gzip token, q=0 refuses a coding
+     * An explicit gzip entry wins over the * wildcard, other codings (x-gzip included) do not count.
+     *
+     * @param acceptEncoding header value, may be null
+     * @return true if a gzip body may be sent
+     */
+    public static boolean isAccepted(String acceptEncoding) {
+        if (acceptEncoding == null) return false;
+        Boolean wildcard = null;
+        for (String entry : acceptEncoding.split(",")) {
+            int semicolon = entry.indexOf(';');
+            String coding = (semicolon < 0 ? entry : entry.substring(0, semicolon)).trim();
+            boolean accepted = semicolon < 0 || quality(entry.substring(semicolon + 1)) > 0;
+            if (coding.equalsIgnoreCase("gzip")) return accepted;
+            if (coding.equals("*")) wildcard = accepted;
+        }
+        return wildcard != null && wildcard;
+    }
+
+    /**
+     * q value of the parameters of an Accept-Encoding entry, 1 when missing, 0 when malformed
+     */
+    private static double quality(String parameters) {
+        for (String parameter : parameters.split(";")) {
+            int equals = parameter.indexOf('=');
+            if (equals < 0 || !parameter.substring(0, equals).trim().equalsIgnoreCase("q")) continue;
+            try {
+                return Double.parseDouble(parameter.substring(equals + 1).trim());
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+        return 1;
+    }
+
+    private static Deflater borrow() {
+        Deflater deflater = pool.poll();
+        return deflater != null ? deflater : new Deflater(LEVEL, true);
+    }
+
+    private static void giveBack(Deflater deflater) {
+        deflater.reset();
+        if (!pool.offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Gzip stream of a pooled deflater, see newOutputStream
+     */
+    public static final class GzipStream extends DeflaterOutputStream {
+
+        private final CRC32 crc = new CRC32();
+        private boolean finished = false;
+        private boolean released = false;
+
+        private GzipStream(OutputStream out, Deflater deflater) throws IOException {
+            super(out, deflater, 8192);
+            out.write(HEADER);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            super.write(b, off, len);
+            crc.update(b, off, len);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if (finished) return;
+            super.finish();
+            writeInt((int) crc.getValue());
+            writeInt((int) def.getBytesRead());
+            finished = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (released) return;
+            try {
+                finish();
+                out.flush();
+            } finally {
+                released = true;
+                giveBack(def);
+            }
+        }
+
+        /**
+         * Give the deflater back without writing anything, for a body which is abandoned
+         * The stream must not be written to afterwards, closing it does nothing.
+         */
+        public void release() {
+            if (released) return;
+            released = true;
+            finished = true;
+            giveBack(def);
+        }
+
+        private void writeInt(int value) throws IOException {
+            out.write(value & 0xff);
+            out.write((value >> 8) & 0xff);
+            out.write((value >> 16) & 0xff);
+            out.write((value >> 24) & 0xff);
+        }
+    }
+}
@@ -34,38 +34,38 @@ public class NumberUtils {
         return true;
     }
 
+    /**
+     * @see TypeCoercion#toInt(Object)
+     */
     public static int toInt(Object number){
-        try{
-            return Integer.parseInt(number.toString());
-        } catch(NumberFormatException | NullPointerException e) {
-            return 0;
-        }
+        return TypeCoercion.toInt(number);
     }
 
+    /**
+     * @see TypeCoercion#toLong(Object)
+     */
     public static long toLong(Object number){
-        try{
-            return Long.parseLong(number.toString());
-        } catch(NumberFormatException | NullPointerException e) {
-            return 0;
-        }
+        return TypeCoercion.toLong(number);
     }
 
     public static boolean compareGreaterThan(Object firstNumber, Object secondNumber){
-        if(isInteger(firstNumber.toString()) && isInteger(secondNumber.toString())){
-            return toInt(firstNumber) > toInt(secondNumber);
-        } else if(isLong(firstNumber.toString()) && isLong(secondNumber.toString())){
-            return toLong(firstNumber) > toLong(secondNumber);
-        }
-        return false;
+        return compare(firstNumber, secondNumber) > 0;
     }
 
     public static boolean compareLessThan(Object firstNumber, Object secondNumber){
-        if(isInteger(firstNumber.toString()) && isInteger(secondNumber.toString())){
-            return toInt(firstNumber) < toInt(secondNumber);
-        } else if(isLong(firstNumber.toString()) && isLong(secondNumber.toString())){
-            return toLong(firstNumber) < toLong(secondNumber);
+        return compare(firstNumber, secondNumber) < 0;
+    }
+
+    /**
+     * Numeric order of the two values, 0 when either one is not a number
+     */
+    private static int compare(Object firstNumber, Object secondNumber){
+        if(TypeCoercion.isLong(firstNumber) && TypeCoercion.isLong(secondNumber)){
+            return Long.compare(TypeCoercion.toLong(firstNumber), TypeCoercion.toLong(secondNumber));
         }
-        return false;
+        BigDecimal first = TypeCoercion.toDecimal(firstNumber);
+        BigDecimal second = TypeCoercion.toDecimal(secondNumber);
+        return first != null && second != null ? first.compareTo(second) : 0;
     }
 
     public static boolean isNumber(String number){
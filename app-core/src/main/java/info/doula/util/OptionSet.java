@@ -0,0 +1,210 @@
+package info.doula.util;
+
+import com.google.common.collect.ImmutableSet;
+import info.doula.exception.ParameterResolveException;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Allowed values of an option or intoption template parameter, compiled once from the template
+ * Option values are kept in an immutable hash set, integral options and intoption values in open-addressing
+ * long and int sets, so a membership check is O(1) and does not allocate for text and integral numbers.
+ * Numbers are matched on their value whatever their boxed type, 1, 1L, 1.0 and BigDecimal 1.00 are the same
+ * option (Gson reads every number as Double), only non-integral numbers go through BigDecimal.
+ * The error message of a value not in the set is built once too.
+ *
+ * @author hossaindoula
+ */
+public abstract class OptionSet {
+
+    private final String errorMessage;
+
+    private OptionSet(String source, Collection<?> options) {
+        this.errorMessage = "set " + source + " from " + options;
+    }
+
+    /**
+     * Set of an option parameter
+     *
+     * @param source parameter name used in the error message
+     * @param options allowed values from the template
+     */
+    public static OptionSet of(String source, Collection<?> options) {
+        ImmutableSet.Builder<Object> values = ImmutableSet.builder();
+        long[] integral = new long[options.size()];
+        int count = 0;
+        for (Object option : options) {
+            if (option == null) continue;
+            if (option instanceof Number && TypeCoercion.isLong(option)) integral[count++] = TypeCoercion.toLong(option);
+            else values.add(normalize(option));
+        }
+        return new ValueSet(source, options, values.build(), new LongTable(Arrays.copyOf(integral, count)));
+    }
+
+    /**
+     * Set of an intoption parameter
+     *
+     * @param source parameter name used in the error message
+     * @param options allowed values from the template, all of them ints
+     * @throws ParameterResolveException if an option is not an int
+     */
+    public static OptionSet ofInts(String source, Collection<?> options) throws ParameterResolveException {
+        int[] values = new int[options.size()];
+        int count = 0;
+        for (Object option : options) {
+            if (!TypeCoercion.isInt(option))
+                throw new ParameterResolveException(source + " options must be integers, " + option + " is not");
+            values[count++] = TypeCoercion.toInt(option);
+        }
+        return new IntSet(source, options, values);
+    }
+
+    public abstract boolean contains(Object value);
+
+    /**
+     * Only an intoption set holds ints, for option sets false
+     */
+    public abstract boolean containsInt(int value);
+
+    /**
+     * @return "set source from [options]"
+     */
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    /**
+     * Non-integral numbers as BigDecimal without trailing zeros, anything else as it is
+     */
+    private static Object normalize(Object value) {
+        if (!(value instanceof Number)) return value;
+        BigDecimal decimal = TypeCoercion.toDecimal(value);
+        return decimal != null ? decimal.stripTrailingZeros() : value;
+    }
+
+    private static final class ValueSet extends OptionSet {
+        private final ImmutableSet<Object> values;
+        private final LongTable integral;
+
+        ValueSet(String source, Collection<?> options, ImmutableSet<Object> values, LongTable integral) {
+            super(source, options);
+            this.values = values;
+            this.integral = integral;
+        }
+
+        @Override
+        public boolean contains(Object value) {
+            if (value == null) return false;
+            if (value instanceof Number) {
+                if (TypeCoercion.isLong(value)) return integral.contains(TypeCoercion.toLong(value));
+                return values.contains(normalize(value));
+            }
+            return values.contains(value);
+        }
+
+        @Override
+        public boolean containsInt(int value) {
+            return false;
+        }
+    }
+
+    private static final class IntSet extends OptionSet {
+        private static final int EMPTY = Integer.MIN_VALUE;
+
+        /** EMPTY marks a free slot, so MIN_VALUE itself is kept aside */
+        private final boolean containsEmpty;
+        private final int[] table;
+        private final int mask;
+
+        IntSet(String source, Collection<?> options, int[] values) {
+            super(source, options);
+            int capacity = Integer.highestOneBit(Math.max(2, values.length) * 2 - 1) << 1;
+            int[] table = new int[capacity];
+            Arrays.fill(table, EMPTY);
+            boolean containsEmpty = false;
+            for (int value : values) {
+                if (value == EMPTY) {
+                    containsEmpty = true;
+                    continue;
+                }
+                int slot = slot(value, capacity - 1);
+                while (table[slot] != EMPTY && table[slot] != value) slot = (slot + 1) & (capacity - 1);
+                table[slot] = value;
+            }
+            this.table = table;
+            this.mask = capacity - 1;
+            this.containsEmpty = containsEmpty;
+        }
+
+        @Override
+        public boolean contains(Object value) {
+            return TypeCoercion.isInt(value) && containsInt(TypeCoercion.toInt(value));
+        }
+
+        @Override
+        public boolean containsInt(int value) {
+            if (value == EMPTY) return containsEmpty;
+            int slot = slot(value, mask);
+            while (true) {
+                int entry = table[slot];
+                if (entry == value) return true;
+                if (entry == EMPTY) return false;
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        private static int slot(int value, int mask) {
+            int hash = value * 0x9E3779B9;
+            return (hash ^ (hash >>> 16)) & mask;
+        }
+    }
+
+    /**
+     * Open-addressing set of the integral options of a ValueSet, laid out like IntSet
+     */
+    private static final class LongTable {
+        private static final long EMPTY = Long.MIN_VALUE;
+
+        private final boolean containsEmpty;
+        private final long[] table;
+        private final int mask;
+
+        LongTable(long[] values) {
+            int capacity = Integer.highestOneBit(Math.max(2, values.length) * 2 - 1) << 1;
+            long[] table = new long[capacity];
+            Arrays.fill(table, EMPTY);
+            boolean containsEmpty = false;
+            for (long value : values) {
+                if (value == EMPTY) {
+                    containsEmpty = true;
+                    continue;
+                }
+                int slot = slot(value, capacity - 1);
+                while (table[slot] != EMPTY && table[slot] != value) slot = (slot + 1) & (capacity - 1);
+                table[slot] = value;
+            }
+            this.table = table;
+            this.mask = capacity - 1;
+            this.containsEmpty = containsEmpty;
+        }
+
+        boolean contains(long value) {
+            if (value == EMPTY) return containsEmpty;
+            int slot = slot(value, mask);
+            while (true) {
+                long entry = table[slot];
+                if (entry == value) return true;
+                if (entry == EMPTY) return false;
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        private static int slot(long value, int mask) {
+            long hash = value * 0x9E3779B97F4A7C15L;
+            int folded = (int) (hash ^ (hash >>> 32));
+            return (folded ^ (folded >>> 16)) & mask;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package info.doula.util;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Coercion of request and response values to the types of the json templates
+ * Dispatches on the runtime type first, values already typed by the JSON parser (Integer, Long, Double,
+ * BigDecimal, Boolean) are converted without going through text. Text is only parsed when the value is a
+ * CharSequence, and integers are parsed in place. Other objects fall back to their toString.
+ * Integral checks are range checked, 3000000000 is a long but not an int, 3.0 is an int.
+ *
+ * @author hossaindoula
+ */
+public final class TypeCoercion {
+
+    private static final double TWO_POW_63 = 0x1p63;
+
+    private TypeCoercion() {
+    }
+
+    /**
+     * @return true if the value is an integral number in int range
+     */
+    public static boolean isInt(Object value) {
+        return isIntegral(value, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return true if the value is an integral number in long range
+     */
+    public static boolean isLong(Object value) {
+        return isIntegral(value, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * @return int value, 0 if the value is not an int
+     */
+    public static int toInt(Object value) {
+        return isInt(value) ? (int) integralValue(value) : 0;
+    }
+
+    /**
+     * @return long value, 0 if the value is not a long
+     */
+    public static long toLong(Object value) {
+        return isLong(value) ? integralValue(value) : 0L;
+    }
+
+    /**
+     * @return decimal value, null if the value is not a finite number
+     */
+    public static BigDecimal toDecimal(Object value) {
+        if (value == null) return null;
+        if (value instanceof BigDecimal) return (BigDecimal) value;
+        if (isFixedWidth(value)) return BigDecimal.valueOf(((Number) value).longValue());
+        if (value instanceof Double) {
+            double number = (Double) value;
+            return Double.isNaN(number) || Double.isInfinite(number) ? null : BigDecimal.valueOf(number);
+        }
+        if (value instanceof BigInteger) return new BigDecimal((BigInteger) value);
+        try {
+            // Float and text, through the shortest decimal text of the value
+            return new BigDecimal(value.toString());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return true for Boolean true, "true" in any case and integral numbers over 0
+     */
+    public static boolean toBoolean(Object value) {
+        if (value == null) return false;
+        if (value instanceof Boolean) return (Boolean) value;
+        if (!(value instanceof Number) && !(value instanceof CharSequence)) value = value.toString();
+        if (value instanceof CharSequence && isTrue((CharSequence) value)) return true;
+        return isLong(value) && integralValue(value) > 0;
+    }
+
+    private static boolean isIntegral(Object value, long min, long max) {
+        if (value == null) return false;
+        if (isFixedWidth(value)) {
+            long number = ((Number) value).longValue();
+            return number >= min && number <= max;
+        }
+        if (value instanceof Double || value instanceof Float) {
+            double number = ((Number) value).doubleValue();
+            // 2^63 is above Long.MAX_VALUE but equal to it as a double
+            return number == Math.rint(number) && number >= min
+                    && (max == Long.MAX_VALUE ? number < TWO_POW_63 : number <= max);
+        }
+        if (value instanceof BigInteger) {
+            BigInteger number = (BigInteger) value;
+            return number.bitLength() < 64 && number.longValue() >= min && number.longValue() <= max;
+        }
+        if (value instanceof BigDecimal) {
+            try {
+                long number = ((BigDecimal) value).longValueExact();
+                return number >= min && number <= max;
+            } catch (ArithmeticException e) {
+                return false;
+            }
+        }
+        return isIntegral(value instanceof CharSequence ? (CharSequence) value : value.toString(), min, max);
+    }
+
+    /**
+     * Value of an integral number, checked by isIntegral
+     */
+    private static long integralValue(Object value) {
+        if (value instanceof BigDecimal) return ((BigDecimal) value).longValueExact();
+        if (value instanceof Number) return ((Number) value).longValue();
+        return parse(value instanceof CharSequence ? (CharSequence) value : value.toString());
+    }
+
+    private static boolean isFixedWidth(Object value) {
+        return value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte;
+    }
+
+    /**
+     * Decimal digits with an optional sign, accumulated negatively as Long.parseLong does to catch overflow
+     */
+    private static boolean isIntegral(CharSequence text, long min, long max) {
+        int length = text.length();
+        if (length == 0) return false;
+        int i = 0;
+        boolean negative = false;
+        char first = text.charAt(0);
+        if (first == '-' || first == '+') {
+            if (length == 1) return false;
+            negative = first == '-';
+            i = 1;
+        }
+        long limit = negative ? min : -max;
+        long multiplyLimit = limit / 10;
+        long result = 0;
+        for (; i < length; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || result < multiplyLimit) return false;
+            result *= 10;
+            if (result < limit + digit) return false;
+            result -= digit;
+        }
+        return true;
+    }
+
+    private static long parse(CharSequence text) {
+        int i = 0;
+        boolean negative = text.charAt(0) == '-';
+        if (negative || text.charAt(0) == '+') i = 1;
+        long result = 0;
+        for (; i < text.length(); i++) {
+            result = result * 10 - (text.charAt(i) - '0');
+        }
+        return negative ? result : -result;
+    }
+
+    private static boolean isTrue(CharSequence text) {
+        return text.length() == 4
+                && Character.toLowerCase(text.charAt(0)) == 't'
+                && Character.toLowerCase(text.charAt(1)) == 'r'
+                && Character.toLowerCase(text.charAt(2)) == 'u'
+                && Character.toLowerCase(text.charAt(3)) == 'e';
+    }
+}
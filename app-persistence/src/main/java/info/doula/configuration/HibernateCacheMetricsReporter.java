@@ -0,0 +1,55 @@
+package info.doula.configuration;
+
+import info.doula.system.MetricsReporter;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.SecondLevelCacheStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Hit and miss counts of the Hibernate second level cache regions and the query cache
+ *
+ * @author hossaindoula
+ */
+@Component
+public class HibernateCacheMetricsReporter implements MetricsReporter {
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Override
+    public String getName() {
+        return "hibernateCache";
+    }
+
+    @Override
+    public Map<String, Object> report() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("statisticsEnabled", statistics.isStatisticsEnabled());
+
+        Map<String, Object> query = new LinkedHashMap<>();
+        query.put("hits", statistics.getQueryCacheHitCount());
+        query.put("misses", statistics.getQueryCacheMissCount());
+        query.put("puts", statistics.getQueryCachePutCount());
+        report.put("queryCache", query);
+
+        Map<String, Object> regions = new LinkedHashMap<>();
+        for (String name : statistics.getSecondLevelCacheRegionNames()) {
+            SecondLevelCacheStatistics region = statistics.getSecondLevelCacheStatistics(name);
+            Map<String, Object> counts = new LinkedHashMap<>();
+            counts.put("hits", region.getHitCount());
+            counts.put("misses", region.getMissCount());
+            counts.put("puts", region.getPutCount());
+            counts.put("elements", region.getElementCountInMemory());
+            regions.put(name, counts);
+        }
+        report.put("regions", regions);
+        return report;
+    }
+}
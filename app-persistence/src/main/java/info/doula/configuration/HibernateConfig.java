@@ -5,20 +5,25 @@ import org.hibernate.cfg.Environment;
 import org.hibernate.context.spi.CurrentTenantIdentifierResolver;
 import org.hibernate.engine.jdbc.connections.spi.MultiTenantConnectionProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.orm.jpa.JpaProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.orm.jpa.JpaVendorAdapter;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
 import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.util.HashMap;
 import java.util.Map;
 
+import javax.persistence.EntityManagerFactory;
 import javax.sql.DataSource;
 
 /**
  * Created by hossaindoula on 6/16/2017.
+ *
+ * The cache and batching settings below are defaults, spring.jpa.properties.* overrides any of them.
  */
 @Configuration
 public class HibernateConfig {
@@ -26,6 +31,15 @@ public class HibernateConfig {
     @Autowired
     private JpaProperties jpaProperties;
 
+    @Value("${hibernate.cache.enabled:true}")
+    private boolean cacheEnabled;
+
+    @Value("${hibernate.jdbc.batch-size:50}")
+    private int batchSize;
+
+    @Value("${hibernate.fetch.batch-size:16}")
+    private int fetchBatchSize;
+
     @Bean
     public JpaVendorAdapter jpaVendorAdapter() {
         return new HibernateJpaVendorAdapter();
@@ -41,6 +55,21 @@ public class HibernateConfig {
         properties.put(Environment.MULTI_TENANT_CONNECTION_PROVIDER, multiTenantConnectionProviderImpl);
         properties.put(Environment.MULTI_TENANT_IDENTIFIER_RESOLVER, currentTenantIdentifierResolverImpl);
 
+        // second level and query cache, the cache keys carry the tenant identifier
+        properties.putIfAbsent(Environment.USE_SECOND_LEVEL_CACHE, String.valueOf(cacheEnabled));
+        properties.putIfAbsent(Environment.USE_QUERY_CACHE, String.valueOf(cacheEnabled));
+        properties.putIfAbsent(Environment.CACHE_REGION_FACTORY, "org.hibernate.cache.ehcache.SingletonEhCacheRegionFactory");
+        properties.putIfAbsent("net.sf.ehcache.configurationResourceName", "/ehcache.xml");
+        properties.putIfAbsent("javax.persistence.sharedCache.mode", "ENABLE_SELECTIVE");
+        properties.putIfAbsent(Environment.GENERATE_STATISTICS, "true");
+
+        // JDBC batching of inserts and updates
+        properties.putIfAbsent(Environment.STATEMENT_BATCH_SIZE, String.valueOf(batchSize));
+        properties.putIfAbsent(Environment.ORDER_INSERTS, "true");
+        properties.putIfAbsent(Environment.ORDER_UPDATES, "true");
+        properties.putIfAbsent(Environment.BATCH_VERSIONED_DATA, "true");
+        properties.putIfAbsent(Environment.DEFAULT_BATCH_FETCH_SIZE, String.valueOf(fetchBatchSize));
+
         LocalContainerEntityManagerFactoryBean em = new LocalContainerEntityManagerFactoryBean();
         em.setDataSource(dataSource);
         em.setPackagesToScan("info.doula");
@@ -48,4 +77,12 @@ public class HibernateConfig {
         em.setJpaPropertyMap(properties);
         return em;
     }
-}
\ No newline at end of file
+
+    /**
+     * Transactions marked read only are sent to a read replica, see ReadReplicaRouter
+     */
+    @Bean
+    public PlatformTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+        return new ReadOnlyRoutingJpaTransactionManager(entityManagerFactory);
+    }
+}
@@ -0,0 +1,49 @@
+package info.doula.configuration;
+
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * JpaTransactionManager which tells the connection provider that a read only transaction is starting
+ * Hibernate takes its connection while the transaction begins, before Spring publishes the read only flag
+ * through TransactionSynchronizationManager, so the flag is handed over here instead.
+ *
+ * @author hossaindoula
+ */
+public class ReadOnlyRoutingJpaTransactionManager extends JpaTransactionManager {
+
+    private static final ThreadLocal<Boolean> readOnly = new ThreadLocal<>();
+
+    public ReadOnlyRoutingJpaTransactionManager(EntityManagerFactory entityManagerFactory) {
+        super(entityManagerFactory);
+    }
+
+    /**
+     * @return true while a read only transaction begins or runs on this thread
+     */
+    public static boolean isReadOnlyTransaction() {
+        return Boolean.TRUE.equals(readOnly.get());
+    }
+
+    @Override
+    protected void doBegin(Object transaction, TransactionDefinition definition) {
+        readOnly.set(definition.isReadOnly());
+        try {
+            super.doBegin(transaction, definition);
+        } catch (RuntimeException e) {
+            readOnly.remove();
+            throw e;
+        }
+    }
+
+    @Override
+    protected void doCleanupAfterCompletion(Object transaction) {
+        try {
+            super.doCleanupAfterCompletion(transaction);
+        } finally {
+            readOnly.remove();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package info.doula.configuration;
+
+import info.doula.system.MetricsReporter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Read replicas for read only transactions
+ * The replicas are listed in persistence.replica.urls (comma separated), without them every connection
+ * comes from the primary. The lag of each replica is measured in the background, a replica further behind
+ * than persistence.replica.max-lag-seconds (or whose replication is broken) gets no reads until it caught up.
+ *
+ * @author hossaindoula
+ */
+@Component
+public class ReadReplicaRouter implements MetricsReporter {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Value("${persistence.replica.urls:}")
+    private String urls;
+
+    @Value("${persistence.replica.username:${spring.datasource.username:}}")
+    private String username;
+
+    @Value("${persistence.replica.password:${spring.datasource.password:}}")
+    private String password;
+
+    @Value("${persistence.replica.max-lag-seconds:5}")
+    private long maxLagSeconds;
+
+    @Value("${persistence.replica.lag-check-seconds:5}")
+    private long lagCheckSeconds;
+
+    /** MySQL replica status, a query without rows means the database is no replica and has no lag */
+    @Value("${persistence.replica.lag-query:SHOW SLAVE STATUS}")
+    private String lagQuery;
+
+    @Value("${persistence.replica.lag-column:Seconds_Behind_Master}")
+    private String lagColumn;
+
+    private List<Replica> replicas = Collections.emptyList();
+    private ScheduledExecutorService lagMonitor;
+
+    private final AtomicInteger next = new AtomicInteger();
+    private final LongAdder routedReads = new LongAdder();
+    private final LongAdder primaryFallbacks = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        List<Replica> list = new ArrayList<>();
+        for (String url : urls.split(",")) {
+            if (url.trim().isEmpty()) continue;
+            DataSource dataSource = DataSourceBuilder.create()
+                    .url(url.trim()).username(username).password(password).build();
+            list.add(new Replica(url.trim(), dataSource));
+        }
+        replicas = Collections.unmodifiableList(list);
+        if (replicas.isEmpty()) return;
+
+        lagMonitor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-lag-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        lagMonitor.scheduleWithFixedDelay(this::checkLag, 0, lagCheckSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (lagMonitor != null) lagMonitor.shutdownNow();
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof Closeable) {
+                try {
+                    ((Closeable) replica.dataSource).close();
+                } catch (Exception ignored) {
+                }
+            }
+        }
+    }
+
+    public boolean hasReplicas() {
+        return !replicas.isEmpty();
+    }
+
+    /**
+     * Next healthy replica in turn
+     *
+     * @return replica data source, null if the read has to go to the primary
+     */
+    public DataSource route() {
+        int size = replicas.size();
+        if (size == 0) return null;
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.healthy) {
+                routedReads.increment();
+                return replica.dataSource;
+            }
+        }
+        primaryFallbacks.increment();
+        return null;
+    }
+
+    @Override
+    public String getName() {
+        return "readReplicas";
+    }
+
+    @Override
+    public Map<String, Object> report() {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("routedReads", routedReads.sum());
+        report.put("primaryFallbacks", primaryFallbacks.sum());
+        Map<String, Object> lag = new LinkedHashMap<>();
+        for (Replica replica : replicas) {
+            Map<String, Object> state = new LinkedHashMap<>();
+            state.put("healthy", replica.healthy);
+            state.put("lagSeconds", replica.lagSeconds);
+            lag.put(replica.url, state);
+        }
+        report.put("replicas", lag);
+        return report;
+    }
+
+    private void checkLag() {
+        for (Replica replica : replicas) {
+            try {
+                List<Long> lags = new JdbcTemplate(replica.dataSource).query(lagQuery, (rs, rowNum) -> {
+                    long value = rs.getLong(lagColumn);
+                    // NULL while replication is stopped
+                    return rs.wasNull() ? Long.MAX_VALUE : value;
+                });
+                replica.lagSeconds = lags.isEmpty() ? 0 : lags.get(0);
+                replica.healthy = replica.lagSeconds <= maxLagSeconds;
+            } catch (RuntimeException e) {
+                replica.lagSeconds = -1;
+                replica.healthy = false;
+                logger.warn("Could not read the lag of replica {}", replica.url, e);
+            }
+        }
+    }
+
+    private static class Replica {
+        private final String url;
+        private final DataSource dataSource;
+        private volatile boolean healthy = false;
+        private volatile long lagSeconds = -1;
+
+        Replica(String url, DataSource dataSource) {
+            this.url = url;
+            this.dataSource = dataSource;
+        }
+    }
+}
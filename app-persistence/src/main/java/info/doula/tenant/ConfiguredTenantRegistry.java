@@ -0,0 +1,36 @@
+package info.doula.tenant;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Tenants listed in tenant.ids (comma separated), all with the default settings
+ * Without a list every tenant id made of letters, digits and underscores is accepted.
+ * Used by JdbcTenantRegistry as long as the tenant table can't be read.
+ *
+ * @author hossaindoula
+ */
+public class ConfiguredTenantRegistry implements TenantRegistry {
+
+    private static final Pattern TENANT_ID = Pattern.compile("[A-Za-z0-9_]{1,64}");
+
+    private final Map<String, Tenant> tenants;
+
+    public ConfiguredTenantRegistry(String tenantIds) {
+        Map<String, Tenant> map = new HashMap<>();
+        for (String id : tenantIds.split(",")) {
+            if (!id.trim().isEmpty()) map.put(id.trim(), new Tenant(id.trim(), 0, 0));
+        }
+        if (!map.isEmpty()) map.put(TenantContext.DEFAULT_TENANT, new Tenant(TenantContext.DEFAULT_TENANT, 0, 0));
+        this.tenants = map.isEmpty() ? null : Collections.unmodifiableMap(map);
+    }
+
+    @Override
+    public Tenant get(String tenantId) {
+        if (tenantId == null) return null;
+        if (tenants != null) return tenants.get(tenantId);
+        return TENANT_ID.matcher(tenantId).matches() ? new Tenant(tenantId, 0, 0) : null;
+    }
+}
@@ -0,0 +1,102 @@
+package info.doula.tenant;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tenants loaded from the tenant table of the default schema and reloaded in the background
+ * The pool is shared with the tenant connections, which keep their schema on release, so the default query
+ * names the schema of the table instead of relying on the current schema of the connection.
+ * Lookups read an immutable snapshot, a failed reload keeps the previous one.
+ * Until the table has been read once the tenants of tenant.ids are used (see ConfiguredTenantRegistry).
+ *
+ * @author hossaindoula
+ */
+@Component
+public class JdbcTenantRegistry implements TenantRegistry {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TenantRegistry fallback;
+
+    /** empty for the tenant table of the default schema */
+    @Value("${tenant.registry.query:}")
+    private String query;
+
+    @Value("${tenant.registry.refresh-seconds:60}")
+    private long refreshSeconds;
+
+    private volatile Map<String, Tenant> tenants;
+
+    private ScheduledExecutorService refresher;
+
+    @Autowired
+    public JdbcTenantRegistry(DataSource dataSource, @Value("${tenant.ids:}") String tenantIds) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.fallback = new ConfiguredTenantRegistry(tenantIds);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (query == null || query.trim().isEmpty()) {
+            query = "select tenant_id, max_connections, rate_limit from " + TenantContext.DEFAULT_TENANT + ".tenant";
+        }
+        refresh();
+        refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tenant-registry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(this::refresh, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (refresher != null) refresher.shutdownNow();
+    }
+
+    @Override
+    public Tenant get(String tenantId) {
+        if (tenantId == null) return null;
+        Map<String, Tenant> snapshot = tenants;
+        return snapshot != null ? snapshot.get(tenantId) : fallback.get(tenantId);
+    }
+
+    /**
+     * Reload the tenant table
+     */
+    public void refresh() {
+        try {
+            Map<String, Tenant> previous = tenants;
+            Map<String, Tenant> loaded = new HashMap<>();
+            jdbcTemplate.query(query, (RowCallbackHandler) rs -> {
+                Tenant tenant = new Tenant(rs.getString(1), rs.getInt(2), rs.getDouble(3));
+                Tenant existing = previous == null ? null : previous.get(tenant.getId());
+                loaded.put(tenant.getId(), existing != null && existing.sameSettings(tenant) ? existing : tenant);
+            });
+            if (!loaded.containsKey(TenantContext.DEFAULT_TENANT)) {
+                loaded.put(TenantContext.DEFAULT_TENANT, new Tenant(TenantContext.DEFAULT_TENANT, 0, 0));
+            }
+            tenants = Collections.unmodifiableMap(loaded);
+        } catch (RuntimeException e) {
+            logger.warn("Could not load the tenants, keeping the {}",
+                    tenants == null ? "configured ones" : "last loaded ones", e);
+        }
+    }
+}
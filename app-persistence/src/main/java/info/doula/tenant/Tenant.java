@@ -0,0 +1,82 @@
+package info.doula.tenant;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A tenant and its settings
+ *
+ * @author hossaindoula
+ */
+public class Tenant {
+
+    private final String id;
+    private final int maxConnections;
+    private final double rateLimit;
+    private final RateLimiter rateLimiter;
+    private final Semaphore connectionPermits;
+
+    /**
+     * Constructor
+     *
+     * @param id tenant id, also the schema name
+     * @param maxConnections connections the tenant may hold at once, 0 for no limit
+     * @param rateLimit requests per second, 0 for no limit
+     */
+    public Tenant(String id, int maxConnections, double rateLimit) {
+        this.id = id;
+        this.maxConnections = maxConnections;
+        this.rateLimit = rateLimit;
+        this.rateLimiter = rateLimit > 0 ? RateLimiter.create(rateLimit) : null;
+        this.connectionPermits = maxConnections > 0 ? new Semaphore(maxConnections) : null;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public double getRateLimit() {
+        return rateLimit;
+    }
+
+    /**
+     * @return false if the tenant is over its request rate
+     */
+    public boolean tryAcquireRequest() {
+        return rateLimiter == null || rateLimiter.tryAcquire();
+    }
+
+    /**
+     * Take one of the tenant's connections, give it back with releaseConnection
+     *
+     * @param timeoutMillis how long to wait for a free one
+     * @return false if the tenant holds maxConnections connections for the whole time
+     */
+    public boolean tryAcquireConnection(long timeoutMillis) {
+        if (connectionPermits == null) return true;
+        try {
+            return connectionPermits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public void releaseConnection() {
+        if (connectionPermits != null) connectionPermits.release();
+    }
+
+    /**
+     * Same settings, so a refreshed registry can keep the existing instance and its rate limiter
+     */
+    boolean sameSettings(Tenant other) {
+        return maxConnections == other.maxConnections
+                && Double.compare(rateLimit, other.rateLimit) == 0;
+    }
+}
@@ -1,24 +1,73 @@
 package info.doula.tenant;
 
+import org.slf4j.MDC;
+
 /**
  * Created by hossaindoula on 6/16/2017.
+ *
+ * Thread bound, work handed to another thread has to carry it over with TenantContextSnapshot.
  */
 public class TenantContext {
 
     public static final String DEFAULT_TENANT = "test";
 
+    /** MDC key of the request id, for the log pattern */
+    public static final String REQUEST_ID_KEY = "requestId";
+
     private static ThreadLocal<String> currentTenant = ThreadLocal.withInitial(() -> DEFAULT_TENANT);
 
+    private static ThreadLocal<Tenant> currentTenantSettings = new ThreadLocal<>();
+
+    private static ThreadLocal<String> requestId = new ThreadLocal<>();
+
     public static void setCurrentTenant(String tenant) {
         currentTenant.set(tenant);
+        currentTenantSettings.remove();
+    }
+
+    /**
+     * Set the current tenant together with its settings from the TenantRegistry
+     * @param tenant
+     */
+    public static void setCurrentTenant(Tenant tenant) {
+        currentTenant.set(tenant.getId());
+        currentTenantSettings.set(tenant);
     }
 
     public static String getCurrentTenant() {
         return currentTenant.get();
     }
 
+    /**
+     * @return settings of the current tenant, null if it was set by id only
+     */
+    public static Tenant getCurrentTenantSettings() {
+        return currentTenantSettings.get();
+    }
+
+    /**
+     * Set the id of the request being served, also put into the MDC
+     * @param id request id, null to remove it
+     */
+    public static void setRequestId(String id) {
+        if (id == null) {
+            requestId.remove();
+            MDC.remove(REQUEST_ID_KEY);
+        } else {
+            requestId.set(id);
+            MDC.put(REQUEST_ID_KEY, id);
+        }
+    }
+
+    public static String getRequestId() {
+        return requestId.get();
+    }
+
     public static void clear() {
         currentTenant.remove();
+        currentTenantSettings.remove();
+        requestId.remove();
+        MDC.remove(REQUEST_ID_KEY);
     }
 
 }
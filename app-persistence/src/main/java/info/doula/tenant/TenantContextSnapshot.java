@@ -0,0 +1,187 @@
+package info.doula.tenant;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Response;
+import org.springframework.context.i18n.LocaleContext;
+import org.springframework.context.i18n.LocaleContextHolder;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Tenant, request id and locale of a thread, captured to be restored on another one
+ * Tasks are wrapped on the submitting thread, they run with the captured context and the thread
+ * they run on gets its own context back afterwards, so a task run by the caller (e.g. CallerRunsPolicy)
+ * does not lose the caller's context.
+ *
+ * <pre>
+ * TenantContextSnapshot context = TenantContextSnapshot.capture();
+ * CompletableFuture.supplyAsync(context.wrapSupplier(() -&gt; repository.findAll()), executor)
+ *         .thenApplyAsync(context.wrapFunction(list -&gt; convert(list)), executor);
+ * </pre>
+ *
+ * @author hossaindoula
+ */
+public final class TenantContextSnapshot {
+
+    private final String tenantId;
+    private final Tenant tenant;
+    private final String requestId;
+    private final LocaleContext localeContext;
+
+    private TenantContextSnapshot(String tenantId, Tenant tenant, String requestId, LocaleContext localeContext) {
+        this.tenantId = tenantId;
+        this.tenant = tenant;
+        this.requestId = requestId;
+        this.localeContext = localeContext;
+    }
+
+    /**
+     * @return context of the current thread
+     */
+    public static TenantContextSnapshot capture() {
+        return new TenantContextSnapshot(TenantContext.getCurrentTenant(), TenantContext.getCurrentTenantSettings(),
+                TenantContext.getRequestId(), LocaleContextHolder.getLocaleContext());
+    }
+
+    /**
+     * Executor which runs every task with the context of the thread submitting it
+     */
+    public static Executor executor(Executor executor) {
+        return command -> executor.execute(capture().wrap(command));
+    }
+
+    /**
+     * supplyAsync with the current context
+     */
+    public static <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier, Executor executor) {
+        return CompletableFuture.supplyAsync(capture().wrapSupplier(supplier), executor);
+    }
+
+    /**
+     * runAsync with the current context
+     */
+    public static CompletableFuture<Void> runAsync(Runnable runnable, Executor executor) {
+        return CompletableFuture.runAsync(capture().wrap(runnable), executor);
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    /**
+     * Make this the context of the current thread until the scope is closed
+     */
+    public Scope attach() {
+        Scope previous = new Scope(capture());
+        apply(this);
+        return previous;
+    }
+
+    public Runnable wrap(Runnable runnable) {
+        return () -> {
+            try (Scope ignored = attach()) {
+                runnable.run();
+            }
+        };
+    }
+
+    public <T> Callable<T> wrap(Callable<T> callable) {
+        return () -> {
+            try (Scope ignored = attach()) {
+                return callable.call();
+            }
+        };
+    }
+
+    public <T> Supplier<T> wrapSupplier(Supplier<T> supplier) {
+        return () -> {
+            try (Scope ignored = attach()) {
+                return supplier.get();
+            }
+        };
+    }
+
+    public <T, R> Function<T, R> wrapFunction(Function<T, R> function) {
+        return value -> {
+            try (Scope ignored = attach()) {
+                return function.apply(value);
+            }
+        };
+    }
+
+    public <T> Consumer<T> wrapConsumer(Consumer<T> consumer) {
+        return value -> {
+            try (Scope ignored = attach()) {
+                consumer.accept(value);
+            }
+        };
+    }
+
+    public <T, U, R> BiFunction<T, U, R> wrapBiFunction(BiFunction<T, U, R> function) {
+        return (first, second) -> {
+            try (Scope ignored = attach()) {
+                return function.apply(first, second);
+            }
+        };
+    }
+
+    /**
+     * OkHttp callback run on the dispatcher thread with this context
+     */
+    public Callback wrap(Callback callback) {
+        return new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                try (Scope ignored = attach()) {
+                    callback.onFailure(call, e);
+                }
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                try (Scope ignored = attach()) {
+                    callback.onResponse(call, response);
+                }
+            }
+        };
+    }
+
+    private static void apply(TenantContextSnapshot snapshot) {
+        if (snapshot.tenant != null) {
+            TenantContext.setCurrentTenant(snapshot.tenant);
+        } else {
+            TenantContext.setCurrentTenant(snapshot.tenantId);
+        }
+        TenantContext.setRequestId(snapshot.requestId);
+        LocaleContextHolder.setLocaleContext(snapshot.localeContext);
+    }
+
+    /**
+     * Puts the previous context of the thread back when closed
+     */
+    public static final class Scope implements AutoCloseable {
+
+        private final TenantContextSnapshot previous;
+
+        private Scope(TenantContextSnapshot previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            apply(previous);
+        }
+    }
+}
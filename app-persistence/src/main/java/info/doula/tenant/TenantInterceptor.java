@@ -1,46 +1,94 @@
 package info.doula.tenant;
 
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
-import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.regex.Pattern;
 
 /**
  * Created by hossaindoula on 6/16/2017.
+ *
+ * Unknown tenants and tenants over their request rate are turned away here, before any connection is taken.
+ * The request id comes from the X-Request-ID header or is generated, and is echoed in the response.
+ * A client id goes into the logs and the response headers, so only a short token is taken over.
+ * The context is cleared in afterCompletion, which also runs when the handler threw.
  */
 @Component
 public class TenantInterceptor extends HandlerInterceptorAdapter {
 
     private static final String TENANT_HEADER = "X-TenantID";
+    private static final String REQUEST_ID_HEADER = "X-Request-ID";
+    private static final Pattern REQUEST_ID = Pattern.compile("[A-Za-z0-9._-]{1,64}");
+
+    private static final byte[] NO_TENANT = "{\"error\": \"No tenant supplied\"}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] UNKNOWN_TENANT = "{\"error\": \"Unknown tenant\"}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] TOO_MANY_REQUESTS = "{\"error\": \"Too many requests\"}".getBytes(StandardCharsets.UTF_8);
+
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+
+    @Autowired
+    private TenantRegistry tenantRegistry;
 
     @Override
     public boolean preHandle(HttpServletRequest req, HttpServletResponse res, Object handler)
             throws Exception {
 
-        String tenant = req.getHeader(TENANT_HEADER);
-        boolean tenantSet = false;
-
-        if(StringUtils.isEmpty(tenant)) {
-            res.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-            res.setContentType(MediaType.APPLICATION_JSON_VALUE);
-            res.getWriter().write("{\"error\": \"No tenant supplied\"}");
-            res.getWriter().flush();
-        } else {
-            TenantContext.setCurrentTenant(tenant);
-            tenantSet = true;
+        String tenantId = req.getHeader(TENANT_HEADER);
+
+        if(StringUtils.isEmpty(tenantId)) {
+            reject(res, HttpServletResponse.SC_BAD_REQUEST, NO_TENANT);
+            return false;
+        }
+
+        Tenant tenant = tenantRegistry.get(tenantId);
+        if (tenant == null) {
+            reject(res, HttpServletResponse.SC_NOT_FOUND, UNKNOWN_TENANT);
+            return false;
+        }
+        if (!tenant.tryAcquireRequest()) {
+            reject(res, SC_TOO_MANY_REQUESTS, TOO_MANY_REQUESTS);
+            return false;
+        }
+
+        String requestId = req.getHeader(REQUEST_ID_HEADER);
+        if (requestId == null || !REQUEST_ID.matcher(requestId).matches()) {
+            requestId = UUID.randomUUID().toString();
         }
+        res.setHeader(REQUEST_ID_HEADER, requestId);
+
+        TenantContext.setCurrentTenant(tenant);
+        TenantContext.setRequestId(requestId);
+        return true;
+    }
 
-        return tenantSet;
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex)
+            throws Exception {
+        TenantContext.clear();
     }
 
+    /**
+     * The request thread goes back to the container while an async handler runs, afterCompletion
+     * then happens on another thread
+     */
     @Override
-    public void postHandle(
-            HttpServletRequest request, HttpServletResponse response, Object handler, ModelAndView modelAndView)
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler)
             throws Exception {
         TenantContext.clear();
     }
-}
\ No newline at end of file
+
+    private static void reject(HttpServletResponse res, int status, byte[] body) throws IOException {
+        res.setStatus(status);
+        res.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+        res.setContentLength(body.length);
+        res.getOutputStream().write(body);
+    }
+}
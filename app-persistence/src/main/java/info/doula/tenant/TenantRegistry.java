@@ -0,0 +1,23 @@
+package info.doula.tenant;
+
+/**
+ * Known tenants
+ *
+ * @author hossaindoula
+ */
+public interface TenantRegistry {
+
+    /**
+     * @param tenantId tenant identifier, e.g. from the X-TenantID header
+     * @return the tenant, null if it does not exist
+     */
+    Tenant get(String tenantId);
+
+    /**
+     * @param tenantId tenant identifier, e.g. from the X-TenantID header
+     * @return true if the tenant exists
+     */
+    default boolean isValid(String tenantId) {
+        return get(tenantId) != null;
+    }
+}
@@ -1,29 +1,134 @@
 package info.doula.tenant.hibernate;
 
+import info.doula.configuration.ReadOnlyRoutingJpaTransactionManager;
+import info.doula.configuration.ReadReplicaRouter;
+import info.doula.system.MetricsReporter;
+import info.doula.tenant.Tenant;
 import info.doula.tenant.TenantContext;
+import info.doula.tenant.TenantRegistry;
 import org.hibernate.HibernateException;
 import org.hibernate.engine.jdbc.connections.spi.MultiTenantConnectionProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.sql.DataSource;
 /**
  * Created by hossaindoula on 6/16/2017.
+ *
+ * Schema per tenant on one pool. The schema of each pooled connection is remembered and only switched
+ * when the next tenant differs. Released connections keep their schema, so plain JDBC users of the same
+ * pool must qualify their tables or use their own DataSource; tenant.pool.restore-default-schema=true
+ * switches released connections back to the default schema at the price of a round trip per release.
+ * Connections of the tenants in tenant.pool.hot-tenants are parked in a small per tenant sub-pool
+ * on release and handed out again to the same tenant without any switch. Connections parked longer than
+ * tenant.pool.hot-idle-millis are closed in the background, so a tenant which goes cold gives them back.
+ * A tenant holds at most the max connections of its registry settings at once.
+ * Read only transactions take their connection from a read replica when one is configured and not lagging,
+ * the tenant schema is switched on it the same way. Replica connections are never parked.
  */
 @Component
-public class MultiTenantConnectionProviderImpl implements MultiTenantConnectionProvider {
+public class MultiTenantConnectionProviderImpl implements MultiTenantConnectionProvider, MetricsReporter {
 
     private static final long serialVersionUID = 6246085840652870138L;
 
     @Autowired
     private DataSource dataSource;
 
+    @Autowired
+    private TenantRegistry tenantRegistry;
+
+    @Autowired
+    private ReadReplicaRouter readReplicaRouter;
+
+    @Value("${tenant.pool.hot-tenants:}")
+    private String hotTenants;
+
+    @Value("${tenant.pool.hot-idle:4}")
+    private int hotIdle;
+
+    @Value("${tenant.pool.hot-idle-millis:30000}")
+    private long hotIdleMillis;
+
+    @Value("${tenant.pool.restore-default-schema:false}")
+    private boolean restoreDefaultSchema;
+
+    @Value("${tenant.pool.limit-wait-millis:1000}")
+    private long limitWaitMillis;
+
+    /** current schema per physical connection, entries go away with the connection */
+    private final Map<Connection, String> schemas = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private Map<String, BlockingDeque<Parked>> hotPools = Collections.emptyMap();
+
+    private ScheduledExecutorService evictor;
+
+    /** tenant whose connection limit a checked out connection counts against */
+    private final Map<Connection, Tenant> holders = new ConcurrentHashMap<>();
+
+    /** checked out connections which came from a read replica */
+    private final Set<Connection> replicaConnections = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    private final LongAdder checkouts = new LongAdder();
+    private final LongAdder switches = new LongAdder();
+    private final LongAdder affinityHits = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder limited = new LongAdder();
+    private final ConcurrentMap<String, LongAdder> switchesByTenant = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        Map<String, BlockingDeque<Parked>> pools = new HashMap<>();
+        for (String tenant : hotTenants.split(",")) {
+            if (!tenant.trim().isEmpty()) pools.put(tenant.trim(), new LinkedBlockingDeque<>(hotIdle));
+        }
+        hotPools = Collections.unmodifiableMap(pools);
+        if (pools.isEmpty()) return;
+
+        evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tenant-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000L, hotIdleMillis / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (evictor != null) evictor.shutdownNow();
+        for (BlockingDeque<Parked> pool : hotPools.values()) {
+            Parked parked;
+            while ((parked = pool.poll()) != null) {
+                closeQuietly(parked.connection);
+            }
+        }
+    }
+
     @Override
     public Connection getAnyConnection() throws SQLException {
-        return dataSource.getConnection();
+        final Connection connection = dataSource.getConnection();
+        switchSchema(connection, TenantContext.DEFAULT_TENANT);
+        return connection;
     }
 
     @Override
@@ -33,31 +138,110 @@ public class MultiTenantConnectionProviderImpl implements MultiTenantConnectionP
 
     @Override
     public Connection getConnection(String tenantIdentifier) throws SQLException {
-        final Connection connection = getAnyConnection();
+        final Tenant tenant = tenantRegistry.get(tenantIdentifier);
+        if (tenant == null) {
+            rejected.increment();
+            throw new HibernateException("Unknown tenant [" + tenantIdentifier + "]");
+        }
+        if (!tenant.tryAcquireConnection(limitWaitMillis)) {
+            limited.increment();
+            throw new HibernateException("Connection limit reached for tenant [" + tenantIdentifier + "]");
+        }
+        checkouts.increment();
+
+        final Connection connection;
         try {
-            connection.createStatement().execute( "USE " + tenantIdentifier );
-        } catch ( SQLException e ) {
-            throw new HibernateException(
-                    "Could not alter JDBC connection to specified schema [" + tenantIdentifier + "]",
-                    e
-            );
+            connection = checkout(tenantIdentifier);
+        } catch (SQLException | RuntimeException e) {
+            tenant.releaseConnection();
+            throw e;
+        }
+        holders.put(connection, tenant);
+        return connection;
+    }
+
+    private Connection checkout(String tenantIdentifier) throws SQLException {
+        if (ReadOnlyRoutingJpaTransactionManager.isReadOnlyTransaction()) {
+            DataSource replica = readReplicaRouter.route();
+            if (replica != null) {
+                final Connection connection = replica.getConnection();
+                switchSchema(connection, tenantIdentifier);
+                replicaConnections.add(connection);
+                return connection;
+            }
+        }
+
+        BlockingDeque<Parked> pool = hotPools.get(tenantIdentifier);
+        if (pool != null) {
+            Parked parked;
+            while ((parked = pool.pollFirst()) != null) {
+                if (System.currentTimeMillis() - parked.parkedAt < hotIdleMillis && !parked.connection.isClosed()) {
+                    affinityHits.increment();
+                    return parked.connection;
+                }
+                closeQuietly(parked.connection);
+            }
         }
+
+        final Connection connection = dataSource.getConnection();
+        switchSchema(connection, tenantIdentifier);
         return connection;
     }
 
     @Override
     public void releaseConnection(String tenantIdentifier, Connection connection) throws SQLException {
-        try {
-            connection.createStatement().execute( "USE " + TenantContext.DEFAULT_TENANT );
-        } catch ( SQLException e ) {
-            throw new HibernateException(
-                    "Could not alter JDBC connection to specified schema [" + tenantIdentifier + "]",
-                    e
-            );
+        Tenant tenant = holders.remove(connection);
+        if (tenant != null) tenant.releaseConnection();
+        boolean fromReplica = replicaConnections.remove(connection);
+
+        BlockingDeque<Parked> pool = hotPools.get(tenantIdentifier);
+        if (pool != null && !fromReplica && !connection.isClosed() && connection.getAutoCommit()
+                && pool.offerFirst(new Parked(connection))) {
+            return;
+        }
+        if (restoreDefaultSchema && !connection.isClosed()) {
+            switchSchema(connection, TenantContext.DEFAULT_TENANT);
         }
         connection.close();
     }
 
+    /**
+     * Close the parked connections idle for longer than hot-idle-millis
+     * Connections are parked and taken at the head, so the oldest ones are at the tail.
+     */
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        for (BlockingDeque<Parked> pool : hotPools.values()) {
+            Parked oldest;
+            while ((oldest = pool.peekLast()) != null && now - oldest.parkedAt >= hotIdleMillis) {
+                // only close it when it was not taken by a checkout in the meantime
+                if (pool.removeLastOccurrence(oldest)) closeQuietly(oldest.connection);
+            }
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "tenantConnections";
+    }
+
+    @Override
+    public Map<String, Object> report() {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("checkouts", checkouts.sum());
+        report.put("schemaSwitches", switches.sum());
+        report.put("affinityHits", affinityHits.sum());
+        report.put("rejected", rejected.sum());
+        report.put("limited", limited.sum());
+        Map<String, Object> parked = new LinkedHashMap<>();
+        hotPools.forEach((tenant, pool) -> parked.put(tenant, pool.size()));
+        report.put("parked", parked);
+        Map<String, Object> byTenant = new LinkedHashMap<>();
+        switchesByTenant.forEach((tenant, count) -> byTenant.put(tenant, count.sum()));
+        report.put("schemaSwitchesByTenant", byTenant);
+        return report;
+    }
+
     @SuppressWarnings("rawtypes")
     @Override
     public boolean isUnwrappableAs(Class unwrapType) {
@@ -74,4 +258,56 @@ public class MultiTenantConnectionProviderImpl implements MultiTenantConnectionP
         return true;
     }
 
+    /**
+     * Switch the connection to the schema unless it is already there
+     * setCatalog lets the driver quote the name, for MySQL it is the same as USE
+     */
+    private void switchSchema(Connection connection, String schema) {
+        try {
+            Connection physical = physical(connection);
+            String current = schemas.get(physical);
+            if (current == null) {
+                current = connection.getCatalog();
+            }
+            if (!schema.equals(current)) {
+                connection.setCatalog(schema);
+                switches.increment();
+                switchesByTenant.computeIfAbsent(schema, key -> new LongAdder()).increment();
+            }
+            schemas.put(physical, schema);
+        } catch ( SQLException e ) {
+            closeQuietly(connection);
+            throw new HibernateException(
+                    "Could not alter JDBC connection to specified schema [" + schema + "]",
+                    e
+            );
+        }
+    }
+
+    /**
+     * The pooled connection handed out is a new proxy on every checkout, the schema belongs to the connection behind it
+     */
+    private static Connection physical(Connection connection) {
+        try {
+            return connection.unwrap(Connection.class);
+        } catch (SQLException e) {
+            return connection;
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    private static class Parked {
+        private final Connection connection;
+        private final long parkedAt = System.currentTimeMillis();
+
+        Parked(Connection connection) {
+            this.connection = connection;
+        }
+    }
 }
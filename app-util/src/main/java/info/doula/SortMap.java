@@ -1,31 +1,35 @@
 package info.doula;
 
-import java.util.LinkedHashMap;
+import com.google.common.collect.ImmutableMap;
+
 import java.util.Map;
 
 /**
  * Created by hossaindoula on 6/15/2017.
+ *
+ * Public sort keys and their backend names. The table is immutable, info.doula.sort.SortSpec parses
+ * and validates sort parameters against it.
  */
-@SuppressWarnings("unchecked")
 public class SortMap {
-    @SuppressWarnings("rawtypes")
-    public static Map sortMap = new LinkedHashMap();
 
-    static{
-        sortMap.put("standard", "relevancy");
-        sortMap.put("-reviewCount", "-review_num");
-        sortMap.put("+reviewCount", "+review_num");
-        sortMap.put("-affiliateRate", "-aflrate");
-        sortMap.put("+affiliateRate", "+aflrate");
-        sortMap.put("-itemPrice", "-item_price");
-        sortMap.put("+itemPrice", "+item_price");
-        sortMap.put("-updateTimestamp", "-update_timestamp");
-        sortMap.put("+updateTimestamp", "+update_timestamp");
-        sortMap.put("-reviewAverage", "-review_ave");
-        sortMap.put("+reviewAverage", "+review_ave");
-        sortMap.put("relevancyLowprice", "relevancy_lowprice");
-        sortMap.put("relevancyHighprice", "relevancy_highprice");
-        sortMap.put("relevancyReviewNum", "relevancy_review_num");
-        sortMap.put("relevancyReviewAve", "relevancy_review_ave");
+    public static final Map<String, String> sortMap = ImmutableMap.<String, String>builder()
+            .put("standard", "relevancy")
+            .put("-reviewCount", "-review_num")
+            .put("+reviewCount", "+review_num")
+            .put("-affiliateRate", "-aflrate")
+            .put("+affiliateRate", "+aflrate")
+            .put("-itemPrice", "-item_price")
+            .put("+itemPrice", "+item_price")
+            .put("-updateTimestamp", "-update_timestamp")
+            .put("+updateTimestamp", "+update_timestamp")
+            .put("-reviewAverage", "-review_ave")
+            .put("+reviewAverage", "+review_ave")
+            .put("relevancyLowprice", "relevancy_lowprice")
+            .put("relevancyHighprice", "relevancy_highprice")
+            .put("relevancyReviewNum", "relevancy_review_num")
+            .put("relevancyReviewAve", "relevancy_review_ave")
+            .build();
+
+    private SortMap() {
     }
-}
\ No newline at end of file
+}
@@ -20,19 +20,26 @@ public class AndNotExpression implements Expression {
 	public void setExpression(Expression expression) {
 		expr = expression;
 	}
+
+	public void render(StringBuilder out) {
+		if (isEmpty()) return;
+
+		if (expr instanceof Expressions && ((Expressions) expr).needsParentheses()) {
+			out.append('(');
+			expr.render(out);
+			out.append(')');
+		} else {
+			expr.render(out);
+		}
+	}
+
+	public boolean isEmpty() {
+		return expr == null || expr.isEmpty();
+	}
 	
 	public String toString() {
-		if (expr == null)  {
-			return "";
-		}
-		
-		if (expr instanceof Expressions) {
-			Expressions tmp_expr = (Expressions)expr;
-			if (tmp_expr.size() > 1) {
-				return "(" + expr.toString() + ")";
-			}
-		}
-		
-		return expr.toString();
+		StringBuilder out = new StringBuilder();
+		render(out);
+		return out.toString();
 	}
 }
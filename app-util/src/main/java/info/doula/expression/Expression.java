@@ -3,5 +3,17 @@ package info.doula.expression;
 /**
  * @author hossaindoula <hossaindoula@gmail.com>
  */
-interface Expression {
+public interface Expression {
+
+    /**
+     * Append the query string of this expression, callers may reuse the builder
+     *
+     * @param out builder to append to
+     */
+    void render(StringBuilder out);
+
+    /**
+     * @return true if the expression renders nothing, decided without rendering it
+     */
+    boolean isEmpty();
 }
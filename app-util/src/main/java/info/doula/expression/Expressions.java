@@ -6,8 +6,6 @@ package info.doula.expression;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.apache.commons.lang.StringUtils;
-
 import static info.doula.util.ObjectUtils.isNullObject;
 
 
@@ -48,40 +46,59 @@ public class Expressions implements Expression {
         return ret;
     }
 
-    public String toString() {
-        ArrayList<String> result = new ArrayList<String>();
-        for (int i = 0; i < exprs.size(); i++) {
-            Expression expr = exprs.get(i);
-
-            if (isNullObject(expr) || expr.toString().equals("")) continue;
+    /**
+     * Renders the children in one pass, the operator before a child is chosen by the child itself
+     * and empty children are skipped without rendering them first
+     */
+    public void render(StringBuilder out) {
+        boolean first = true;
+        for (Expression expr : exprs) {
+            if (isNullObject(expr) || expr.isEmpty()) continue;
 
-            // add an expression
-            if (expr instanceof Expressions) {
-                Expressions tmp_expr = (Expressions)expr;
-                if (tmp_expr.size() > 1) {
-                    result.add("(" + expr.toString() + ")");
+            // add AND, ANDNOT or NOT
+            if (!first) {
+                if (expr instanceof NotExpression) {
+                    out.append(" NOT ");
+                } else if (expr instanceof AndNotExpression) {
+                    out.append(" ANDNOT ");
                 } else {
-                    result.add(expr.toString());
+                    out.append(" AND ");
                 }
-            } else {
-                result.add(expr.toString());
             }
+            first = false;
 
-            // add AND, ANDNOT or NOT
-            if (i < (exprs.size() - 1)) {
-                Expression nextExpr = exprs.get(i + 1);
-                if (!isNullObject(nextExpr) && !nextExpr.toString().equals("")) {
-                    if (nextExpr instanceof NotExpression) {
-                        result.add("NOT");
-                    } else if (nextExpr instanceof AndNotExpression) {
-                        result.add("ANDNOT");
-                    } else {
-                        result.add("AND");
-                    }
-                }
+            // add an expression
+            if (expr instanceof Expressions && ((Expressions) expr).needsParentheses()) {
+                out.append('(');
+                expr.render(out);
+                out.append(')');
+            } else {
+                expr.render(out);
             }
         }
-        String[] ret = new String[result.size()];
-        return StringUtils.join(result.toArray(ret)," ");
+    }
+
+    public boolean isEmpty() {
+        for (Expression expr : exprs) {
+            if (!isNullObject(expr) && !expr.isEmpty()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return true if more than one child renders something
+     */
+    boolean needsParentheses() {
+        int count = 0;
+        for (Expression expr : exprs) {
+            if (!isNullObject(expr) && !expr.isEmpty() && ++count > 1) return true;
+        }
+        return false;
+    }
+
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        render(out);
+        return out.toString();
     }
 }
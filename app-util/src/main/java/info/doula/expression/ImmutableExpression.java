@@ -0,0 +1,181 @@
+package info.doula.expression;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable, canonical form of an expression tree
+ * Nested AND and OR groups are flattened into their parent and empty expressions are removed,
+ * so the tree renders the same query as the one it was built from with fewer parentheses.
+ * Every group and negation remembers its query string the first time it is rendered, on its own or as part
+ * of a parent, so a subtree shared between trees is rendered once and appended after that.
+ * Nodes can be shared between trees and threads.
+ *
+ * @author hossaindoula
+ */
+public final class ImmutableExpression implements Expression {
+
+    public enum Kind {
+        TERM, AND, OR, NOT, ANDNOT
+    }
+
+    /** Renders nothing, the result of simplifying an empty tree */
+    public static final ImmutableExpression EMPTY = new ImmutableExpression(Kind.AND, null, new ImmutableExpression[0]);
+
+    private final Kind kind;
+    private final String text;
+    private final ImmutableExpression[] operands;
+
+    /** rendered query, racy but always the same value */
+    private String rendered;
+
+    private ImmutableExpression(Kind kind, String text, ImmutableExpression[] operands) {
+        this.kind = kind;
+        this.text = text;
+        this.operands = operands;
+    }
+
+    /**
+     * Simplify an expression tree into its canonical form
+     *
+     * @param expression tree to simplify, may be null
+     * @return canonical tree, EMPTY if the tree renders nothing
+     */
+    public static ImmutableExpression of(Expression expression) {
+        if (expression == null) return EMPTY;
+        if (expression instanceof ImmutableExpression) return (ImmutableExpression) expression;
+        if (expression instanceof AndNotExpression) {
+            ImmutableExpression operand = of(((AndNotExpression) expression).expr);
+            if (operand == EMPTY) return EMPTY;
+            return new ImmutableExpression(expression instanceof NotExpression ? Kind.NOT : Kind.ANDNOT,
+                    null, new ImmutableExpression[]{operand});
+        }
+        if (expression instanceof OrExpressions) {
+            return group(Kind.OR, ((OrExpressions) expression).exprs);
+        }
+        if (expression instanceof Expressions) {
+            return group(Kind.AND, ((Expressions) expression).exprs);
+        }
+        return term(expression.toString());
+    }
+
+    /**
+     * @param text query text, null or empty for EMPTY
+     */
+    public static ImmutableExpression term(String text) {
+        if (text == null || text.isEmpty()) return EMPTY;
+        return new ImmutableExpression(Kind.TERM, text, new ImmutableExpression[0]);
+    }
+
+    private static ImmutableExpression group(Kind kind, List<? extends Expression> children) {
+        List<ImmutableExpression> flat = new ArrayList<>(children.size());
+        for (Expression child : children) {
+            add(kind, flat, of(child));
+        }
+        if (flat.isEmpty()) return EMPTY;
+        if (flat.size() == 1) return flat.get(0);
+        return new ImmutableExpression(kind, null, flat.toArray(new ImmutableExpression[flat.size()]));
+    }
+
+    /**
+     * Adds an operand to a group of the given kind, splicing in the operands of a group of the same kind.
+     * A negation is only rendered as an operator between two operands of an AND group, in the first
+     * place of a group and anywhere in an OR group it stands for its operand.
+     */
+    private static void add(Kind kind, List<ImmutableExpression> flat, ImmutableExpression operand) {
+        if (operand == EMPTY) return;
+        if (operand.isNegation() && (kind == Kind.OR || flat.isEmpty())) {
+            add(kind, flat, operand.operands[0]);
+        } else if (operand.kind == kind) {
+            for (ImmutableExpression nested : operand.operands) {
+                add(kind, flat, nested);
+            }
+        } else {
+            flat.add(operand);
+        }
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return query text of a TERM, null otherwise
+     */
+    public String getText() {
+        return text;
+    }
+
+    public List<ImmutableExpression> getOperands() {
+        return Collections.unmodifiableList(Arrays.asList(operands));
+    }
+
+    public boolean isNegation() {
+        return kind == Kind.NOT || kind == Kind.ANDNOT;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this == EMPTY;
+    }
+
+    @Override
+    public void render(StringBuilder out) {
+        out.append(toString());
+    }
+
+    /**
+     * Query string of a group or negation, built from the memoized strings of its operands
+     */
+    private String renderOperands() {
+        StringBuilder out = new StringBuilder();
+        switch (kind) {
+            case NOT:
+            case ANDNOT:
+                renderGrouped(operands[0], out);
+                break;
+            case OR:
+                for (int i = 0; i < operands.length; i++) {
+                    if (i > 0) out.append(" OR ");
+                    operands[i].render(out);
+                }
+                break;
+            case AND:
+                for (int i = 0; i < operands.length; i++) {
+                    ImmutableExpression operand = operands[i];
+                    if (i > 0) {
+                        out.append(operand.kind == Kind.NOT ? " NOT " : operand.kind == Kind.ANDNOT ? " ANDNOT " : " AND ");
+                    }
+                    if (operand.isNegation()) operand.render(out);
+                    else renderGrouped(operand, out);
+                }
+                break;
+            default:
+                break;
+        }
+        return out.toString();
+    }
+
+    private static void renderGrouped(ImmutableExpression operand, StringBuilder out) {
+        if (operand.kind == Kind.AND || operand.kind == Kind.OR) {
+            out.append('(');
+            operand.render(out);
+            out.append(')');
+        } else {
+            operand.render(out);
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (kind == Kind.TERM) return text;
+        String cached = rendered;
+        if (cached == null) {
+            cached = renderOperands();
+            rendered = cached;
+        }
+        return cached;
+    }
+}
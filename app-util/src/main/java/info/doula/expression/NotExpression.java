@@ -6,13 +6,12 @@ package info.doula.expression;
  * @author hossaindoula <hossaindoula@gmail.com>
  */
 public class NotExpression extends AndNotExpression implements Expression {
-	Expression expr = null;
 
 	public NotExpression() {
 
 	}
 
 	public NotExpression(Expression expression) {
-		expr = expression;
+		super(expression);
 	}
 }
@@ -2,8 +2,6 @@ package info.doula.expression;
 
 import java.util.List;
 
-import org.apache.commons.lang.StringUtils;
-
 /**
  * OrExpression
  *
@@ -17,15 +15,13 @@ public class OrExpressions extends Expressions {
 		super(list);
 	}
 	
-	public String toString() {
-		if (exprs.size() > 0) {
-			if (exprs.size() == 1) {
-				return exprs.get(0).toString();
-			}
-			
-			return StringUtils.join(toStringArray()," OR ");
+	public void render(StringBuilder out) {
+		boolean first = true;
+		for (Expression expr : exprs) {
+			if (expr == null || expr.isEmpty()) continue;
+			if (!first) out.append(" OR ");
+			first = false;
+			expr.render(out);
 		}
-
-		return "";
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,372 @@
+package info.doula.expression;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Compiles an expression tree into a predicate over in-memory records, e.g. upstream results
+ * parsed into maps, so they can be filtered the way the search backend would filter them.
+ *
+ * Terms are single clauses of the query syntax:
+ * <ul>
+ *     <li>field:value, field:"quoted value" - equal, strings ignore case</li>
+ *     <li>field:val* - starts with</li>
+ *     <li>field:* - has a value</li>
+ *     <li>field:[from TO to], field:{from TO to} - inclusive and exclusive range, * for an open end</li>
+ *     <li>value - any field, or the default field, equals the value</li>
+ * </ul>
+ * Fields may be paths (address.city) into nested maps, a collection matches if any element does.
+ * A numeric range compares numbers and numeric text on their value. A term holding more than one
+ * clause, e.g. a StringExpression "a:1 AND b:2", cannot be compiled and is rejected.
+ * The tree is simplified first and every term is parsed once, AND and OR stop at the first operand
+ * that decides the result. The predicate is immutable and can be shared between threads.
+ *
+ * @author hossaindoula
+ */
+public final class RecordPredicates {
+
+    private RecordPredicates() {
+    }
+
+    public static Predicate<Map<String, Object>> compile(Expression expression) {
+        return compile(expression, null);
+    }
+
+    /**
+     * @param expression tree to compile, an empty tree matches every record
+     * @param defaultField field of terms without one, null to look at every field
+     * @throws IllegalArgumentException if a term is not a single clause
+     */
+    public static Predicate<Map<String, Object>> compile(Expression expression, String defaultField) {
+        ImmutableExpression root = ImmutableExpression.of(expression);
+        if (root.isEmpty()) return record -> true;
+        return compile(root, defaultField);
+    }
+
+    private static Predicate<Map<String, Object>> compile(ImmutableExpression node, String defaultField) {
+        switch (node.getKind()) {
+            case TERM:
+                return compileTerm(node.getText(), defaultField);
+            case NOT:
+            case ANDNOT:
+                // a negation on its own renders as its operand, see ImmutableExpression
+                return compile(node.getOperands().get(0), defaultField);
+            case OR: {
+                List<ImmutableExpression> operands = node.getOperands();
+                @SuppressWarnings("unchecked")
+                Predicate<Map<String, Object>>[] any = new Predicate[operands.size()];
+                for (int i = 0; i < any.length; i++) {
+                    any[i] = compile(operands.get(i), defaultField);
+                }
+                return new AnyOf(any);
+            }
+            default: {
+                List<Predicate<Map<String, Object>>> must = new ArrayList<>();
+                List<Predicate<Map<String, Object>>> mustNot = new ArrayList<>();
+                for (ImmutableExpression operand : node.getOperands()) {
+                    if (operand.isNegation()) mustNot.add(compile(operand.getOperands().get(0), defaultField));
+                    else must.add(compile(operand, defaultField));
+                }
+                return new AllOf(toArray(must), toArray(mustNot));
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Predicate<Map<String, Object>>[] toArray(List<Predicate<Map<String, Object>>> list) {
+        return list.toArray(new Predicate[list.size()]);
+    }
+
+    private static Predicate<Map<String, Object>> compileTerm(String text, String defaultField) {
+        String term = text.trim();
+        int colon = fieldSeparator(term);
+        String field = colon > 0 ? term.substring(0, colon) : defaultField;
+        String value = colon > 0 ? term.substring(colon + 1).trim() : term;
+        if (!isSingleClause(value)) {
+            throw new IllegalArgumentException("term is not a single clause: " + text);
+        }
+
+        ValueMatcher matcher = compileValue(value);
+        if (field == null) return new AnyField(matcher);
+        return new FieldMatch(new FieldAccessor(field), matcher);
+    }
+
+    /**
+     * Position of the colon after the field name, -1 if the term has no field
+     */
+    private static int fieldSeparator(String term) {
+        for (int i = 0; i < term.length(); i++) {
+            char c = term.charAt(i);
+            if (c == ':') return i;
+            if (c == '"' || c == '[' || c == '{' || Character.isWhitespace(c)) return -1;
+        }
+        return -1;
+    }
+
+    /**
+     * False for an empty value, unbalanced quotes or brackets, and whitespace or parentheses outside of them
+     */
+    private static boolean isSingleClause(String value) {
+        if (value.isEmpty()) return false;
+        boolean quoted = false;
+        int depth = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (quoted) {
+                continue;
+            } else if (c == '[' || c == '{') {
+                depth++;
+            } else if (c == ']' || c == '}') {
+                if (--depth < 0) return false;
+            } else if (depth == 0 && (c == '(' || c == ')' || Character.isWhitespace(c))) {
+                return false;
+            }
+        }
+        return !quoted && depth == 0;
+    }
+
+    private static ValueMatcher compileValue(String value) {
+        if (value.equals("*")) {
+            return candidate -> true;
+        }
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            return new Equals(value.substring(1, value.length() - 1));
+        }
+        if (value.length() >= 2 && (value.startsWith("[") || value.startsWith("{"))
+                && (value.endsWith("]") || value.endsWith("}"))) {
+            String[] bounds = value.substring(1, value.length() - 1).trim().split("\\s+TO\\s+");
+            if (bounds.length == 2) {
+                return new Range(bounds[0].trim(), value.charAt(0) == '[',
+                        bounds[1].trim(), value.charAt(value.length() - 1) == ']');
+            }
+        }
+        if (value.length() > 1 && value.endsWith("*") && value.indexOf('*') == value.length() - 1) {
+            return new Prefix(value.substring(0, value.length() - 1));
+        }
+        return new Equals(value);
+    }
+
+    private static Double parseNumber(String text) {
+        if (text.isEmpty()) return null;
+        char first = text.charAt(0);
+        if (!(first == '-' || first == '+' || first == '.' || Character.isDigit(first))) return null;
+        try {
+            return Double.valueOf(text);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Resolves a field, a dotted name is tried as a key first and then as a path into nested maps
+     */
+    private static final class FieldAccessor {
+        private final String name;
+        private final String[] path;
+
+        FieldAccessor(String name) {
+            this.name = name;
+            this.path = name.indexOf('.') > 0 ? name.split("\\.") : null;
+        }
+
+        Object get(Map<String, Object> record) {
+            Object value = record.get(name);
+            if (value != null || path == null) return value;
+            Object current = record;
+            for (String segment : path) {
+                if (!(current instanceof Map)) return null;
+                current = ((Map<?, ?>) current).get(segment);
+            }
+            return current;
+        }
+    }
+
+    private interface ValueMatcher {
+        boolean matches(Object candidate);
+    }
+
+    /**
+     * Matches a value against a matcher, collections and arrays match if any element does
+     */
+    private static boolean matchValue(ValueMatcher matcher, Object value) {
+        if (value == null) return false;
+        if (value instanceof Collection) {
+            for (Object element : (Collection<?>) value) {
+                if (element != null && matcher.matches(element)) return true;
+            }
+            return false;
+        }
+        if (value instanceof Object[]) {
+            for (Object element : (Object[]) value) {
+                if (element != null && matcher.matches(element)) return true;
+            }
+            return false;
+        }
+        return matcher.matches(value);
+    }
+
+    private static final class Equals implements ValueMatcher {
+        private final String text;
+        private final Double number;
+        private final Boolean bool;
+
+        Equals(String text) {
+            this.text = text;
+            this.number = parseNumber(text);
+            this.bool = text.equalsIgnoreCase("true") ? Boolean.TRUE : text.equalsIgnoreCase("false") ? Boolean.FALSE : null;
+        }
+
+        @Override
+        public boolean matches(Object candidate) {
+            if (candidate instanceof Number) {
+                return number != null && Double.compare(((Number) candidate).doubleValue(), number) == 0;
+            }
+            if (candidate instanceof Boolean) {
+                return candidate.equals(bool);
+            }
+            String value = candidate instanceof String ? (String) candidate : candidate.toString();
+            return value.equalsIgnoreCase(text);
+        }
+    }
+
+    private static final class Prefix implements ValueMatcher {
+        private final String prefix;
+
+        Prefix(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public boolean matches(Object candidate) {
+            String value = candidate instanceof String ? (String) candidate : candidate.toString();
+            return value.regionMatches(true, 0, prefix, 0, prefix.length());
+        }
+    }
+
+    private static final class Range implements ValueMatcher {
+        private final String from;
+        private final String to;
+        private final Double fromNumber;
+        private final Double toNumber;
+        private final boolean fromInclusive;
+        private final boolean toInclusive;
+        private final boolean numeric;
+
+        Range(String from, boolean fromInclusive, String to, boolean toInclusive) {
+            this.from = from.equals("*") ? null : from;
+            this.to = to.equals("*") ? null : to;
+            this.fromInclusive = fromInclusive;
+            this.toInclusive = toInclusive;
+            this.fromNumber = this.from == null ? null : parseNumber(this.from);
+            this.toNumber = this.to == null ? null : parseNumber(this.to);
+            this.numeric = (this.from == null || fromNumber != null) && (this.to == null || toNumber != null);
+        }
+
+        @Override
+        public boolean matches(Object candidate) {
+            if (numeric && candidate instanceof Number) {
+                return matchesNumber(((Number) candidate).doubleValue());
+            }
+            String value = candidate instanceof String ? (String) candidate : candidate.toString();
+            if (numeric) {
+                // "1000" is above [100 TO 200] although it sorts between them as text
+                Double number = parseNumber(value.trim());
+                if (number != null) return matchesNumber(number);
+            }
+            if (from != null) {
+                int cmp = value.compareToIgnoreCase(from);
+                if (cmp < 0 || (cmp == 0 && !fromInclusive)) return false;
+            }
+            if (to != null) {
+                int cmp = value.compareToIgnoreCase(to);
+                if (cmp > 0 || (cmp == 0 && !toInclusive)) return false;
+            }
+            return true;
+        }
+
+        private boolean matchesNumber(double value) {
+            if (fromNumber != null) {
+                int cmp = Double.compare(value, fromNumber);
+                if (cmp < 0 || (cmp == 0 && !fromInclusive)) return false;
+            }
+            if (toNumber != null) {
+                int cmp = Double.compare(value, toNumber);
+                if (cmp > 0 || (cmp == 0 && !toInclusive)) return false;
+            }
+            return true;
+        }
+    }
+
+    private static final class FieldMatch implements Predicate<Map<String, Object>> {
+        private final FieldAccessor field;
+        private final ValueMatcher matcher;
+
+        FieldMatch(FieldAccessor field, ValueMatcher matcher) {
+            this.field = field;
+            this.matcher = matcher;
+        }
+
+        @Override
+        public boolean test(Map<String, Object> record) {
+            return matchValue(matcher, field.get(record));
+        }
+    }
+
+    private static final class AnyField implements Predicate<Map<String, Object>> {
+        private final ValueMatcher matcher;
+
+        AnyField(ValueMatcher matcher) {
+            this.matcher = matcher;
+        }
+
+        @Override
+        public boolean test(Map<String, Object> record) {
+            for (Object value : record.values()) {
+                if (matchValue(matcher, value)) return true;
+            }
+            return false;
+        }
+    }
+
+    private static final class AllOf implements Predicate<Map<String, Object>> {
+        private final Predicate<Map<String, Object>>[] must;
+        private final Predicate<Map<String, Object>>[] mustNot;
+
+        AllOf(Predicate<Map<String, Object>>[] must, Predicate<Map<String, Object>>[] mustNot) {
+            this.must = must;
+            this.mustNot = mustNot;
+        }
+
+        @Override
+        public boolean test(Map<String, Object> record) {
+            for (Predicate<Map<String, Object>> predicate : must) {
+                if (!predicate.test(record)) return false;
+            }
+            for (Predicate<Map<String, Object>> predicate : mustNot) {
+                if (predicate.test(record)) return false;
+            }
+            return true;
+        }
+    }
+
+    private static final class AnyOf implements Predicate<Map<String, Object>> {
+        private final Predicate<Map<String, Object>>[] any;
+
+        AnyOf(Predicate<Map<String, Object>>[] any) {
+            this.any = any;
+        }
+
+        @Override
+        public boolean test(Map<String, Object> record) {
+            for (Predicate<Map<String, Object>> predicate : any) {
+                if (predicate.test(record)) return true;
+            }
+            return false;
+        }
+    }
+}
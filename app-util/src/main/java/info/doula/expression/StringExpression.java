@@ -25,6 +25,14 @@ public class StringExpression implements Expression {
 	public void setExpression(Expression expression) {
 		expr = expression.toString();
 	}
+
+	public void render(StringBuilder out) {
+		if (!isNullObject(expr)) out.append(expr);
+	}
+
+	public boolean isEmpty() {
+		return isNullObject(expr) || expr.isEmpty();
+	}
 	
 	public String toString() {
 		if (isNullObject(expr)) return "";
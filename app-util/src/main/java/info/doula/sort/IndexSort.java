@@ -0,0 +1,96 @@
+package info.doula.sort;
+
+/**
+ * Sorts record positions with a comparator on primitive ints, no boxing
+ *
+ * @author hossaindoula
+ */
+final class IndexSort {
+
+    @FunctionalInterface
+    interface IndexComparator {
+        int compare(int a, int b);
+    }
+
+    private IndexSort() {
+    }
+
+    /**
+     * @return positions 0..n-1 in order, stable merge sort
+     */
+    static int[] sort(int n, IndexComparator order) {
+        int[] index = new int[n];
+        for (int i = 0; i < n; i++) index[i] = i;
+        int[] buffer = new int[n];
+        for (int width = 1; width < n; width <<= 1) {
+            for (int low = 0; low < n - width; low += width << 1) {
+                merge(index, buffer, low, low + width, Math.min(low + (width << 1), n), order);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * The k first positions in order, a bounded max-heap keeps the k best seen so far
+     * which costs n log k instead of n log n
+     */
+    static int[] top(int n, int k, IndexComparator order) {
+        int[] heap = new int[k];
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            if (size < k) {
+                heap[size] = i;
+                siftUp(heap, size++, order);
+            } else if (order.compare(i, heap[0]) < 0) {
+                heap[0] = i;
+                siftDown(heap, 0, size, order);
+            }
+        }
+        // take the largest off the heap into the back of the array
+        for (int end = size - 1; end > 0; end--) {
+            int largest = heap[0];
+            heap[0] = heap[end];
+            heap[end] = largest;
+            siftDown(heap, 0, end, order);
+        }
+        return heap;
+    }
+
+    private static void merge(int[] index, int[] buffer, int low, int middle, int high, IndexComparator order) {
+        if (order.compare(index[middle - 1], index[middle]) <= 0) return;
+        System.arraycopy(index, low, buffer, low, high - low);
+        int left = low;
+        int right = middle;
+        for (int i = low; i < high; i++) {
+            if (right >= high || (left < middle && order.compare(buffer[left], buffer[right]) <= 0)) {
+                index[i] = buffer[left++];
+            } else {
+                index[i] = buffer[right++];
+            }
+        }
+    }
+
+    private static void siftUp(int[] heap, int position, IndexComparator order) {
+        int value = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (order.compare(heap[parent], value) >= 0) break;
+            heap[position] = heap[parent];
+            position = parent;
+        }
+        heap[position] = value;
+    }
+
+    private static void siftDown(int[] heap, int position, int size, IndexComparator order) {
+        int value = heap[position];
+        int half = size >>> 1;
+        while (position < half) {
+            int child = (position << 1) + 1;
+            if (child + 1 < size && order.compare(heap[child + 1], heap[child]) > 0) child++;
+            if (order.compare(value, heap[child]) >= 0) break;
+            heap[position] = heap[child];
+            position = child;
+        }
+        heap[position] = value;
+    }
+}
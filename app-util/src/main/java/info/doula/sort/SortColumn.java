@@ -0,0 +1,119 @@
+package info.doula.sort;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Values of one sort field read once from every record, numbers into a primitive array
+ * Nulls and missing values sort last in either direction.
+ *
+ * @author hossaindoula
+ */
+abstract class SortColumn {
+
+    final boolean[] missing;
+    final int direction;
+
+    SortColumn(int size, boolean descending) {
+        this.missing = new boolean[size];
+        this.direction = descending ? -1 : 1;
+    }
+
+    static SortColumn of(List<? extends Map<String, Object>> records, String field, boolean descending) {
+        int n = records.size();
+        Object[] values = new Object[n];
+        boolean integral = true;
+        boolean numeric = true;
+        for (int i = 0; i < n; i++) {
+            Object value = records.get(i).get(field);
+            values[i] = value;
+            if (value == null) continue;
+            if (!(value instanceof Number)) {
+                numeric = false;
+                integral = false;
+            } else if (!isIntegral(value)) {
+                integral = false;
+            }
+        }
+        if (integral) return new LongColumn(values, descending);
+        if (numeric) return new DoubleColumn(values, descending);
+        return new ObjectColumn(values, descending);
+    }
+
+    final int compare(int a, int b) {
+        if (missing[a] || missing[b]) {
+            return missing[a] ? (missing[b] ? 0 : 1) : -1;
+        }
+        return direction * compareValues(a, b);
+    }
+
+    abstract int compareValues(int a, int b);
+
+    static boolean isIntegral(Object value) {
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static int compareObjects(Object left, Object right) {
+        if (left instanceof String && right instanceof String) {
+            return ((String) left).compareTo((String) right);
+        }
+        if (left instanceof Comparable && left.getClass() == right.getClass()) {
+            return ((Comparable) left).compareTo(right);
+        }
+        return left.toString().compareTo(right.toString());
+    }
+
+    private static final class LongColumn extends SortColumn {
+        private final long[] values;
+
+        LongColumn(Object[] source, boolean descending) {
+            super(source.length, descending);
+            values = new long[source.length];
+            for (int i = 0; i < source.length; i++) {
+                if (source[i] == null) missing[i] = true;
+                else values[i] = ((Number) source[i]).longValue();
+            }
+        }
+
+        @Override
+        int compareValues(int a, int b) {
+            return Long.compare(values[a], values[b]);
+        }
+    }
+
+    private static final class DoubleColumn extends SortColumn {
+        private final double[] values;
+
+        DoubleColumn(Object[] source, boolean descending) {
+            super(source.length, descending);
+            values = new double[source.length];
+            for (int i = 0; i < source.length; i++) {
+                if (source[i] == null) missing[i] = true;
+                else values[i] = ((Number) source[i]).doubleValue();
+            }
+        }
+
+        @Override
+        int compareValues(int a, int b) {
+            return Double.compare(values[a], values[b]);
+        }
+    }
+
+    private static final class ObjectColumn extends SortColumn {
+        private final Object[] values;
+
+        ObjectColumn(Object[] source, boolean descending) {
+            super(source.length, descending);
+            values = source;
+            for (int i = 0; i < source.length; i++) {
+                if (source[i] == null) missing[i] = true;
+            }
+        }
+
+        @Override
+        int compareValues(int a, int b) {
+            return SortSpec.compareValues(values[a], values[b], false);
+        }
+    }
+}
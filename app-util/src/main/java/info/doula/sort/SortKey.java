@@ -0,0 +1,51 @@
+package info.doula.sort;
+
+/**
+ * One key of a sort specification
+ *
+ * @author hossaindoula
+ */
+public final class SortKey {
+
+    private final String name;
+    private final String field;
+    private final String backendName;
+    private final boolean descending;
+
+    /**
+     * @param name public key, e.g. -itemPrice
+     * @param field record field sorted on, null for keys only the backend can sort by (relevancy)
+     * @param backendName key as the backend knows it, e.g. -item_price
+     * @param descending true for a key with a minus sign
+     */
+    SortKey(String name, String field, String backendName, boolean descending) {
+        this.name = name;
+        this.field = field;
+        this.backendName = backendName;
+        this.descending = descending;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return record field, null if the key cannot be sorted on locally
+     */
+    public String getField() {
+        return field;
+    }
+
+    public String getBackendName() {
+        return backendName;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
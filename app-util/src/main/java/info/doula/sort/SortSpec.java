@@ -0,0 +1,185 @@
+package info.doula.sort;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import info.doula.SortMap;
+import info.doula.exception.BadRequestException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Parsed multi-key sort parameter, e.g. "-itemPrice,+reviewCount"
+ * Keys are validated against a table of public keys and backend names (SortMap by default), a key
+ * without sign is taken as ascending since a + in a query string arrives as a space.
+ * The same spec translates the sort for the backend and re-sorts upstream results in memory.
+ * Relevancy keys have no record field, records equal on the other keys keep their upstream order.
+ * Immutable and thread-safe, specs parsed against SortMap are cached.
+ *
+ * @author hossaindoula
+ */
+public final class SortSpec {
+
+    public static final SortSpec NONE = new SortSpec(Collections.emptyList());
+
+    private static final Cache<String, SortSpec> cache = CacheBuilder.newBuilder().maximumSize(1000).build();
+
+    private final List<SortKey> keys;
+    private final SortKey[] localKeys;
+    private final String backend;
+
+    private SortSpec(List<SortKey> keys) {
+        this.keys = Collections.unmodifiableList(keys);
+        List<SortKey> local = new ArrayList<>(keys.size());
+        StringBuilder backend = new StringBuilder();
+        for (SortKey key : keys) {
+            if (key.getField() != null) local.add(key);
+            if (backend.length() > 0) backend.append(',');
+            backend.append(key.getBackendName());
+        }
+        this.localKeys = local.toArray(new SortKey[local.size()]);
+        this.backend = backend.toString();
+    }
+
+    /**
+     * Parse a sort parameter against SortMap
+     *
+     * @param sort comma separated public keys, null or empty for NONE
+     * @throws BadRequestException for unknown or repeated keys
+     */
+    public static SortSpec parse(String sort) throws BadRequestException {
+        if (sort == null) return NONE;
+        SortSpec spec = cache.getIfPresent(sort);
+        if (spec == null) {
+            spec = parse(sort, SortMap.sortMap);
+            cache.put(sort, spec);
+        }
+        return spec;
+    }
+
+    /**
+     * Parse a sort parameter against a table of public keys and backend names
+     *
+     * @param sort comma separated public keys, null or empty for NONE
+     * @param table public key to backend name
+     * @throws BadRequestException for unknown or repeated keys
+     */
+    public static SortSpec parse(String sort, Map<String, String> table) throws BadRequestException {
+        if (sort == null || sort.trim().isEmpty()) return NONE;
+
+        List<SortKey> keys = new ArrayList<>();
+        Set<String> fields = new HashSet<>();
+        for (String token : sort.split(",")) {
+            String name = token.trim();
+            if (name.isEmpty()) continue;
+            if (!table.containsKey(name) && table.containsKey("+" + name)) name = "+" + name;
+
+            String backendName = table.get(name);
+            if (backendName == null) {
+                throw new BadRequestException("sort " + name + " is not supported");
+            }
+
+            boolean signed = name.charAt(0) == '+' || name.charAt(0) == '-';
+            String field = signed ? name.substring(1) : null;
+            if (!fields.add(field != null ? field : name)) {
+                throw new BadRequestException("sort " + name + " is given more than once");
+            }
+            keys.add(new SortKey(name, field, backendName, name.charAt(0) == '-'));
+        }
+        return keys.isEmpty() ? NONE : new SortSpec(keys);
+    }
+
+    public List<SortKey> getKeys() {
+        return keys;
+    }
+
+    /**
+     * @return sort parameter for the backend, comma separated backend names, empty for NONE
+     */
+    public String toBackend() {
+        return backend;
+    }
+
+    /**
+     * @return true if there is a key records can be sorted on locally
+     */
+    public boolean isLocallySortable() {
+        return localKeys.length > 0;
+    }
+
+    /**
+     * Comparator over records, nulls last in either direction
+     * For whole lists sort and top are faster, they read every value once.
+     */
+    public Comparator<Map<String, Object>> comparator() {
+        return (left, right) -> {
+            for (SortKey key : localKeys) {
+                int cmp = compareValues(left.get(key.getField()), right.get(key.getField()), key.isDescending());
+                if (cmp != 0) return cmp;
+            }
+            return 0;
+        };
+    }
+
+    /**
+     * Stable sort of the records into a new list
+     */
+    public <T extends Map<String, Object>> List<T> sort(List<T> records) {
+        return top(records, records.size());
+    }
+
+    /**
+     * The first k records in sort order, e.g. one page, without sorting the rest
+     */
+    public <T extends Map<String, Object>> List<T> top(List<T> records, int k) {
+        int n = records.size();
+        k = Math.min(k, n);
+        if (k <= 0) return new ArrayList<>();
+        if (localKeys.length == 0) return new ArrayList<>(records.subList(0, k));
+
+        SortColumn[] columns = new SortColumn[localKeys.length];
+        for (int c = 0; c < columns.length; c++) {
+            columns[c] = SortColumn.of(records, localKeys[c].getField(), localKeys[c].isDescending());
+        }
+        IndexSort.IndexComparator order = (a, b) -> {
+            for (SortColumn column : columns) {
+                int cmp = column.compare(a, b);
+                if (cmp != 0) return cmp;
+            }
+            // upstream order breaks ties, which also makes the heap selection stable
+            return Integer.compare(a, b);
+        };
+
+        int[] selected = k == n ? IndexSort.sort(n, order) : IndexSort.top(n, k, order);
+        List<T> result = new ArrayList<>(selected.length);
+        for (int index : selected) {
+            result.add(records.get(index));
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return keys.toString();
+    }
+
+    static int compareValues(Object left, Object right, boolean descending) {
+        if (left == null || right == null) {
+            return left == null ? (right == null ? 0 : 1) : -1;
+        }
+        int cmp;
+        if (left instanceof Number && right instanceof Number) {
+            cmp = SortColumn.isIntegral(left) && SortColumn.isIntegral(right)
+                    ? Long.compare(((Number) left).longValue(), ((Number) right).longValue())
+                    : Double.compare(((Number) left).doubleValue(), ((Number) right).doubleValue());
+        } else {
+            cmp = SortColumn.compareObjects(left, right);
+        }
+        return descending ? -cmp : cmp;
+    }
+}